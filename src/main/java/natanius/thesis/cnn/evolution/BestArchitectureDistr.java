@@ -4,7 +4,9 @@ import static java.lang.Math.floorDiv;
 import static java.time.Instant.now;
 import static java.util.Collections.shuffle;
 import static natanius.thesis.cnn.evolution.data.Constants.ACTIVATION_STRATEGIES;
+import static natanius.thesis.cnn.evolution.data.Constants.QUANTIZATION_CALIBRATION_SIZE;
 import static natanius.thesis.cnn.evolution.data.Constants.RANDOM;
+import static natanius.thesis.cnn.evolution.data.Constants.TRAINING_THREADS;
 import static natanius.thesis.cnn.evolution.data.DataReader.loadTestData;
 import static natanius.thesis.cnn.evolution.data.DataReader.loadTrainData;
 import static natanius.thesis.cnn.evolution.genes.GeneticFunctions.buildNetworkFromChromosome;
@@ -17,6 +19,7 @@ import natanius.thesis.cnn.evolution.genes.Chromosome;
 import natanius.thesis.cnn.evolution.genes.LayerGene;
 import natanius.thesis.cnn.evolution.genes.LayerType;
 import natanius.thesis.cnn.evolution.network.NeuralNetwork;
+import natanius.thesis.cnn.evolution.network.QuantizedNetwork;
 
 public class BestArchitectureDistr {
 
@@ -30,6 +33,7 @@ public class BestArchitectureDistr {
 
         Chromosome chromosome = parseChromosomeString(text);
         NeuralNetwork network = buildNetworkFromChromosome(chromosome);
+        network.setTrainingThreads(TRAINING_THREADS);
 
         System.out.println(network);
 
@@ -44,6 +48,10 @@ public class BestArchitectureDistr {
             printTimeTaken(trainingTime);
             analyzeClassDistribution(network, imagesTest);
         }
+
+        QuantizedNetwork quantized = QuantizedNetwork.quantize(network,
+            imagesTrain.subList(0, Math.min(QUANTIZATION_CALIBRATION_SIZE, imagesTrain.size())));
+        System.out.println(quantized.compare(network, imagesTest, 32));
     }
 
 
@@ -0,0 +1,42 @@
+package natanius.thesis.cnn.evolution;
+
+import static natanius.thesis.cnn.evolution.data.DataReader.TEST_CSV;
+import static natanius.thesis.cnn.evolution.data.DataReader.TEST_IMAGES_IDX;
+import static natanius.thesis.cnn.evolution.data.DataReader.TEST_LABELS_IDX;
+import static natanius.thesis.cnn.evolution.data.DataReader.TRAIN_CSV;
+import static natanius.thesis.cnn.evolution.data.DataReader.TRAIN_IMAGES_IDX;
+import static natanius.thesis.cnn.evolution.data.DataReader.TRAIN_LABELS_IDX;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import natanius.thesis.cnn.evolution.data.IdxDataset;
+
+/**
+ * Одноразове перетворення data/mnist_train.csv та data/mnist_test.csv у IDX файли поруч з ними,
+ * після чого DataReader завантажує набори з IDX. Без аргументів перетворює обидва набори,
+ * з аргументами {@code <csv> <images> <labels>} — один довільний файл.
+ */
+public class CsvToIdx {
+
+    public static void main(String[] args) {
+        if (args.length == 3) {
+            convert(args[0], args[1], args[2]);
+        } else if (args.length == 0) {
+            convert(TRAIN_CSV, TRAIN_IMAGES_IDX, TRAIN_LABELS_IDX);
+            convert(TEST_CSV, TEST_IMAGES_IDX, TEST_LABELS_IDX);
+        } else {
+            System.err.println("Usage: CsvToIdx [<csv> <images-idx> <labels-idx>]");
+            System.exit(1);
+        }
+    }
+
+    private static void convert(String csv, String images, String labels) {
+        if (!Files.isRegularFile(Path.of(csv))) {
+            System.err.println("File not found " + csv);
+            System.exit(1);
+        }
+        long start = System.nanoTime();
+        int count = IdxDataset.convertCsv(Path.of(csv), Path.of(images), Path.of(labels));
+        System.out.printf("%s → %s, %s: %d images in %.1f s%n", csv, images, labels, count, (System.nanoTime() - start) / 1e9);
+    }
+}
@@ -6,6 +6,7 @@ import static java.time.Instant.now;
 import static java.util.Collections.shuffle;
 import static natanius.thesis.cnn.evolution.data.Constants.BATCH_SIZE;
 import static natanius.thesis.cnn.evolution.data.Constants.DATASET_FRACTION;
+import static natanius.thesis.cnn.evolution.data.Constants.GA_CHECKPOINT_INTERVAL;
 import static natanius.thesis.cnn.evolution.data.Constants.GENERATIONS;
 import static natanius.thesis.cnn.evolution.data.Constants.POPULATION_SIZE;
 import static natanius.thesis.cnn.evolution.data.Constants.RANDOM;
@@ -14,18 +15,27 @@ import static natanius.thesis.cnn.evolution.data.DataReader.loadTrainData;
 import static natanius.thesis.cnn.evolution.data.ExcelLogger.saveCacheToExcel;
 import static natanius.thesis.cnn.evolution.genes.GeneticFunctions.buildNetworkFromChromosome;
 import static natanius.thesis.cnn.evolution.genes.PopulationGenerator.generateInitialPopulation;
+import static natanius.thesis.cnn.evolution.kernels.Kernels.BACKEND;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import natanius.thesis.cnn.evolution.activation.LeakyReLU;
-import natanius.thesis.cnn.evolution.activation.Linear;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import natanius.thesis.cnn.evolution.data.EvolutionCheckpoint;
 import natanius.thesis.cnn.evolution.data.ExcelLogger;
 import natanius.thesis.cnn.evolution.data.Image;
+import natanius.thesis.cnn.evolution.data.ModelCheckpoint;
+import natanius.thesis.cnn.evolution.data.ResumableRandom;
+import natanius.thesis.cnn.evolution.genes.Chromosome;
 import natanius.thesis.cnn.evolution.genes.GeneticAlgorithm;
 import natanius.thesis.cnn.evolution.genes.Individual;
 import natanius.thesis.cnn.evolution.layers.Layer;
 import natanius.thesis.cnn.evolution.network.EpochTrainer;
-import natanius.thesis.cnn.evolution.network.NetworkBuilder;
 import natanius.thesis.cnn.evolution.network.NeuralNetwork;
 import natanius.thesis.cnn.evolution.visualization.FormDigits;
 
@@ -34,9 +44,17 @@ public class Evolution {
     private static final int MODE = 2;
     private static final GeneticAlgorithm GA = new GeneticAlgorithm();
     private static final EpochTrainer EPOCH_TRAINER = new EpochTrainer();
+    private static final String ONE_NETWORK_ARCHITECTURE =
+        "CONVOLUTION (8 filters 3x3, stride=1, valid padding + LeakyReLU) → MAX_POOL (2x2, stride=1) → FC output";
+    private static final Path ONE_NETWORK_MODEL_PATH = Path.of("logs/one_network.cnn");
+    private static final String BEST_MODEL_PATH = "logs/best_model_gen_%d.cnn";
+    private static final Path CHECKPOINT_PATH = Path.of("logs/evolution_checkpoint.bin");
+    private static final String RESUME_OPTION = "--resume";
 
     public static void main(String[] args) {
-        parseArguments(args);
+        boolean resume = Arrays.asList(args).contains(RESUME_OPTION);
+        parseArguments(Arrays.stream(args).filter(arg -> !arg.equals(RESUME_OPTION)).toArray(String[]::new));
+        EvolutionCheckpoint checkpoint = resume ? loadCheckpoint() : null;
         List<Image> imagesTrain = loadTrainData();
         List<Image> imagesTest = loadTestData();
         imagesTrain = imagesTrain.subList(0, (int) (imagesTrain.size() * DATASET_FRACTION));
@@ -46,10 +64,27 @@ public class Evolution {
         if (MODE == 1) {
             testOneNetwork(imagesTrain, imagesTest);
         } else if (MODE == 2) {
-            runGeneticAlgorithm(imagesTrain, imagesTest);
+            runGeneticAlgorithm(imagesTrain, imagesTest, checkpoint);
         }
     }
 
+    /**
+     * Checkpoint для --resume; запуск з іншими параметрами продовжувати не можна
+     */
+    private static EvolutionCheckpoint loadCheckpoint() {
+        if (!Files.exists(CHECKPOINT_PATH)) {
+            System.err.println("No checkpoint to resume from: " + CHECKPOINT_PATH);
+            System.exit(1);
+        }
+        EvolutionCheckpoint checkpoint = EvolutionCheckpoint.load(CHECKPOINT_PATH);
+        if (checkpoint.datasetFraction() != DATASET_FRACTION || checkpoint.population().size() != POPULATION_SIZE) {
+            System.err.println("Checkpoint was written with DATASET_FRACTION=" + checkpoint.datasetFraction()
+                + " and POPULATION_SIZE=" + checkpoint.population().size() + "; pass the same arguments to resume");
+            System.exit(1);
+        }
+        return checkpoint;
+    }
+
     private static void parseArguments(String[] args) {
         if (args.length > 0) {
             try {
@@ -74,16 +109,24 @@ public class Evolution {
 
         System.out.println("Dataset fraction: " + DATASET_FRACTION * 100 + "%; " +
             "population size: " + POPULATION_SIZE + "; " +
-            "available processors: " + getRuntime().availableProcessors());
+            "available processors: " + getRuntime().availableProcessors() + "; " +
+            "kernels: " + BACKEND.getName());
     }
 
     private static void testOneNetwork(List<Image> imagesTrain, List<Image> imagesTest) {
+        // Збережену модель не потрібно навчати повторно
+        if (Files.exists(ONE_NETWORK_MODEL_PATH)) {
+            long start = System.nanoTime();
+            NeuralNetwork network = ModelCheckpoint.load(ONE_NETWORK_MODEL_PATH);
+            System.out.printf("Loaded %s in %.1f ms%n", ONE_NETWORK_MODEL_PATH, (System.nanoTime() - start) / 1e6);
+            System.out.println(network);
+            System.out.printf("Test Accuracy = %.2f%%%n", network.test(imagesTest));
+            new Thread(new FormDigits(network)).start();
+            return;
+        }
 
-        NeuralNetwork network = new NetworkBuilder()
-            .addConvolutionLayer(8, 3, 1, 0.01, new LeakyReLU(), 0)
-            .addMaxPoolLayer(2, 1)
-            .addFullyConnectedLayer(0.01, new Linear())
-            .build();
+        Chromosome chromosome = Chromosome.parse(ONE_NETWORK_ARCHITECTURE);
+        NeuralNetwork network = buildNetworkFromChromosome(chromosome);
 
         System.out.println(network);
 
@@ -97,20 +140,50 @@ public class Evolution {
             printTimeTaken(now().getEpochSecond() - start);
         }
 
+        ModelCheckpoint.save(network, chromosome, ONE_NETWORK_MODEL_PATH);
         new Thread(new FormDigits(network)).start();
     }
 
-    private static void runGeneticAlgorithm(List<Image> imagesTrain, List<Image> imagesTest) {
+    private static void runGeneticAlgorithm(List<Image> imagesTrain, List<Image> imagesTest, EvolutionCheckpoint checkpoint) {
 
-        List<Individual> population = generateInitialPopulation();
+        List<Individual> population;
+        int firstGeneration = 0;
+        boolean cacheChecked = false;
+        if (checkpoint != null) {
+            // Оцінені особини та кеш відновлюються без повторного навчання
+            population = checkpoint.population();
+            GeneticAlgorithm.CACHE.putAll(checkpoint.cache());
+            RANDOM.setState(checkpoint.random());
+            firstGeneration = checkpoint.generation();
+            cacheChecked = checkpoint.cacheChecked();
+            System.out.println("Resuming generation " + (firstGeneration + 1) + " from " + CHECKPOINT_PATH
+                + ", cache size: " + checkpoint.cache().size());
+        } else {
+            population = generateInitialPopulation();
+        }
 
         List<Image> validationSet = imagesTrain.subList(0, imagesTrain.size() / 10);
         List<Image> trainSet = imagesTrain.subList(imagesTrain.size() / 10, imagesTrain.size());
-        for (int gen = 0; gen < GENERATIONS; gen++) {
+        for (int gen = firstGeneration; gen < GENERATIONS; gen++) {
             long start = now().getEpochSecond();
             System.out.println("===================================== Generation " + (gen + 1) + "/" + GENERATIONS + " =====================================");
 
-            population = GA.evolve(population, trainSet, validationSet);
+            int generation = gen;
+            AtomicInteger evaluations = new AtomicInteger();
+            // Знімок кожні GA_CHECKPOINT_INTERVAL оцінок і після оцінювання всієї популяції: якщо процес
+            // зупиниться під час навчання найкращої мережі, оцінені особини не навчаються повторно.
+            // Поки інші мережі ще навчаються, стан RANDOM береться з початку оцінювання
+            GA.setEvaluationListener(evaluated -> {
+                boolean complete = allEvaluated(evaluated);
+                if (evaluations.incrementAndGet() % GA_CHECKPOINT_INTERVAL == 0 || complete) {
+                    saveCheckpoint(generation, true, evaluated,
+                        complete ? RANDOM.getState() : GA.getEvaluationStartRandom());
+                }
+            });
+            population = cacheChecked
+                ? GA.resume(population, trainSet, validationSet)
+                : GA.evolve(population, trainSet, validationSet);
+            cacheChecked = false;
 
             // Знайдемо найкращу архітектуру
             Individual best = population.stream()
@@ -119,7 +192,32 @@ public class Evolution {
 
             System.out.println("\nBest fitness: " + best.getFitness() + " for " + best.getChromosome());
             trainAndSaveResults(imagesTest, best, trainSet, validationSet, start, gen);
+            saveCheckpoint(gen + 1, false, population, RANDOM.getState());
+        }
+    }
+
+    private static boolean allEvaluated(List<Individual> population) {
+        return population.stream().allMatch(individual -> individual.getFitness() != Float.MAX_VALUE);
+    }
+
+    /**
+     * Знімок стану запуску. Під час оцінювання викликається з паралельних потоків, тому знімки
+     * записуються по одному; особини без fitness у знімку оцінюються після відновлення.
+     */
+    private static synchronized void saveCheckpoint(int generation, boolean cacheChecked, List<Individual> population,
+                                                    ResumableRandom.State random) {
+        Map<String, Float> cache;
+        synchronized (GeneticAlgorithm.CACHE) {
+            cache = new LinkedHashMap<>(GeneticAlgorithm.CACHE);
+        }
+        List<Individual> snapshot = new ArrayList<>();
+        for (Individual individual : population) {
+            Individual copy = new Individual(individual.getChromosome());
+            copy.setFitness(individual.getFitness());
+            snapshot.add(copy);
         }
+        new EvolutionCheckpoint(DATASET_FRACTION, generation, cacheChecked, snapshot, cache, random)
+            .save(CHECKPOINT_PATH);
     }
 
     private static void trainAndSaveResults(List<Image> imagesTest, Individual best, List<Image> trainSet, List<Image> validationSet, long start, int gen) {
@@ -130,6 +228,7 @@ public class Evolution {
         float testAccuracy = neuralNetwork.test(imagesTest);
         long trainingTime = now().getEpochSecond() - start;
         printTimeTaken(trainingTime);
+        ModelCheckpoint.save(neuralNetwork, best.getChromosome(), Path.of(BEST_MODEL_PATH.formatted(gen + 1)));
 
         int totalParams = neuralNetwork.getLayers().stream()
             .mapToInt(Layer::getParameterCount)
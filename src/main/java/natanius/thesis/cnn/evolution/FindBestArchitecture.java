@@ -5,6 +5,7 @@ import static java.time.Instant.now;
 import static java.util.Collections.shuffle;
 import static natanius.thesis.cnn.evolution.data.Constants.ACTIVATION_STRATEGIES;
 import static natanius.thesis.cnn.evolution.data.Constants.RANDOM;
+import static natanius.thesis.cnn.evolution.data.Constants.TRAINING_THREADS;
 import static natanius.thesis.cnn.evolution.data.DataReader.loadTestData;
 import static natanius.thesis.cnn.evolution.data.DataReader.loadTrainData;
 import static natanius.thesis.cnn.evolution.data.ExcelLogger.saveArchitectureTestResults;
@@ -61,6 +62,7 @@ public class FindBestArchitecture {
 
         Chromosome chromosome = parseChromosomeString(text);
         NeuralNetwork network = buildNetworkFromChromosome(chromosome);
+        network.setTrainingThreads(TRAINING_THREADS);
 
         System.out.println(network);
 
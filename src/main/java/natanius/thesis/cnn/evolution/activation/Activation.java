@@ -1,6 +1,21 @@
 package natanius.thesis.cnn.evolution.activation;
 
-public interface Activation {
+/**
+ * Функція активації. Ієрархія закрита, тому шари та ядра працюють з відомим набором реалізацій,
+ * а масивні методи викликаються один раз на рядок або зріз: кожна реалізація виконує власний
+ * щільний цикл без віртуального виклику на кожен елемент.
+ */
+public sealed interface Activation permits ReLU, LeakyReLU, Sigmoid, Linear {
     double forward(double z);
-    double backward(double z);
+
+    /**
+     * out[offset + i] = f(in[offset + i]), i ∈ [0, length). Масиви in і out можуть збігатися.
+     */
+    void forward(double[] in, double[] out, int offset, int length);
+
+    /**
+     * gradient[gradientOffset + i] *= f'(z), де похідна виражена через збережений вихід a = f(z) = a[aOffset + i].
+     * Усі активації дозволяють це, тому шарам не потрібно зберігати зважені суми z для backpropagation.
+     */
+    void backwardMulFromOutput(double[] a, int aOffset, double[] gradient, int gradientOffset, int length);
 }
@@ -2,7 +2,7 @@ package natanius.thesis.cnn.evolution.activation;
 
 import static natanius.thesis.cnn.evolution.data.Constants.LEAK;
 
-public class LeakyReLU implements Activation {
+public final class LeakyReLU implements Activation {
 
     @Override
     public double forward(double z) {
@@ -10,8 +10,19 @@ public class LeakyReLU implements Activation {
     }
 
     @Override
-    public double backward(double z) {
-        return z > 0 ? 1.0 : LEAK;
+    public void forward(double[] in, double[] out, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            double z = in[i];
+            out[i] = z <= 0 ? LEAK * z : z;
+        }
+    }
+
+    @Override
+    public void backwardMulFromOutput(double[] a, int aOffset, double[] gradient, int gradientOffset, int length) {
+        // LEAK > 0, тому знак a збігається зі знаком z
+        for (int i = 0; i < length; i++) {
+            gradient[gradientOffset + i] *= a[aOffset + i] > 0 ? 1.0 : LEAK;
+        }
     }
 
 }
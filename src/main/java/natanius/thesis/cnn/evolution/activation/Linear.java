@@ -1,6 +1,6 @@
 package natanius.thesis.cnn.evolution.activation;
 
-public class Linear implements Activation {
+public final class Linear implements Activation {
 
     @Override
     public double forward(double x) {
@@ -8,8 +8,15 @@ public class Linear implements Activation {
     }
 
     @Override
-    public double backward(double x) {
-        return 1.0;  // f'(x) = 1
+    public void forward(double[] in, double[] out, int offset, int length) {
+        if (in != out) {
+            System.arraycopy(in, offset, out, offset, length);
+        }
+    }
+
+    @Override
+    public void backwardMulFromOutput(double[] a, int aOffset, double[] gradient, int gradientOffset, int length) {
+        // f'(x) = 1, градієнт не змінюється
     }
 
 }
@@ -1,6 +1,6 @@
 package natanius.thesis.cnn.evolution.activation;
 
-public class ReLU implements Activation {
+public final class ReLU implements Activation {
 
     @Override
     public double forward(double z) {
@@ -8,8 +8,18 @@ public class ReLU implements Activation {
     }
 
     @Override
-    public double backward(double z) {
-        return z > 0 ? 1.0 : 0.0;
+    public void forward(double[] in, double[] out, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            out[i] = Math.max(0, in[i]);
+        }
+    }
+
+    @Override
+    public void backwardMulFromOutput(double[] a, int aOffset, double[] gradient, int gradientOffset, int length) {
+        // a > 0 тоді й лише тоді, коли z > 0
+        for (int i = 0; i < length; i++) {
+            gradient[gradientOffset + i] *= a[aOffset + i] > 0 ? 1.0 : 0.0;
+        }
     }
 
 }
@@ -1,16 +1,72 @@
 package natanius.thesis.cnn.evolution.activation;
 
-public class Sigmoid implements Activation {
+/**
+ * σ(z) = 1 / (1 + e^(-z)). Похідна σ' = σ(1 - σ) обчислюється зі збереженого виходу без повторного e^(-z).
+ *
+ * <p>З {@code -Dcnn.fastSigmoid=true} замість {@link Math#exp} використовується поліноміальна апроксимація
+ * (див. {@link #fastExp}) з відносною похибкою менше 1e-8 — як для навчання, так і для передбачення.
+ * SIMD backend від неї не залежить: векторна експонента (VectorOperators.EXP) вже швидша за поліном,
+ * і нею обчислюються всі елементи, включно з хвостом, коротшим за вектор.
+ */
+public final class Sigmoid implements Activation {
+
+    private static final boolean FAST = Boolean.getBoolean("cnn.fastSigmoid");
+
+    /**
+     * Межа аргументу fastExp: 2^k для |k| ≤ 1022 залишається нормальним числом
+     */
+    private static final double EXP_LIMIT = 708.0;
+    private static final double LOG2E = 1.4426950408889634;
+    private static final double LN2 = 0.6931471805599453;
+    /**
+     * Додавання 1.5 × 2^52 округлює до цілого, яке опиняється в молодших бітах мантиси
+     */
+    private static final double ROUNDING = 0x1.8p52;
 
     @Override
     public double forward(double z) {
-        return 1.0 / (1.0 + Math.exp(-z));
+        return 1.0 / (1.0 + exp(-z));
+    }
+
+    @Override
+    public void forward(double[] in, double[] out, int offset, int length) {
+        if (FAST) {
+            for (int i = offset; i < offset + length; i++) {
+                out[i] = 1.0 / (1.0 + fastExp(-in[i]));
+            }
+            return;
+        }
+        for (int i = offset; i < offset + length; i++) {
+            out[i] = 1.0 / (1.0 + Math.exp(-in[i]));
+        }
     }
 
     @Override
-    public double backward(double z) {
-        double s = forward(z);
-        return s * (1 - s);
+    public void backwardMulFromOutput(double[] a, int aOffset, double[] gradient, int gradientOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            double s = a[aOffset + i];
+            gradient[gradientOffset + i] *= s * (1 - s);
+        }
+    }
+
+    private static double exp(double x) {
+        return FAST ? fastExp(x) : Math.exp(x);
+    }
+
+    /**
+     * e^x = 2^k × e^y, де k = round(x × log2 e), y = (x × log2 e - k) × ln 2 ∈ [-0.35, 0.35].
+     * e^y — ряд Тейлора до y^7 (відносна похибка < 0.35^8 / 8! ≈ 5e-9), 2^k збирається з бітів експоненти.
+     * Аргумент обмежується ±EXP_LIMIT, тому для σ(z) результат коректний для будь-якого z.
+     */
+    private static double fastExp(double x) {
+        // Порівняння замість Math.min/max: NaN та -0.0 тут не потрібно обробляти окремо
+        double t = (x < -EXP_LIMIT ? -EXP_LIMIT : x > EXP_LIMIT ? EXP_LIMIT : x) * LOG2E;
+        double shifted = t + ROUNDING;
+        double y = (t - (shifted - ROUNDING)) * LN2;
+        double p = 1.0 + y * (1.0 + y * (1.0 / 2 + y * (1.0 / 6 + y * (1.0 / 24
+            + y * (1.0 / 120 + y * (1.0 / 720 + y * (1.0 / 5040)))))));
+        long k = Double.doubleToRawLongBits(shifted) - Double.doubleToRawLongBits(ROUNDING);
+        return p * Double.longBitsToDouble((k + 1023) << 52);
     }
 
 }
@@ -2,18 +2,18 @@ package natanius.thesis.cnn.evolution.data;
 
 import static lombok.AccessLevel.PRIVATE;
 
-import java.util.Random;
 import lombok.NoArgsConstructor;
 import natanius.thesis.cnn.evolution.activation.Activation;
 import natanius.thesis.cnn.evolution.activation.LeakyReLU;
 import natanius.thesis.cnn.evolution.activation.ReLU;
 import natanius.thesis.cnn.evolution.activation.Sigmoid;
+import natanius.thesis.cnn.evolution.kernels.GemmPrecision;
 
 @NoArgsConstructor(access = PRIVATE)
 public class Constants {
     //    100% constants
     public static final long SEED = 123L;
-    public static final Random RANDOM = new Random(SEED);
+    public static final ResumableRandom RANDOM = new ResumableRandom(SEED);
     public static final int INPUT_ROWS = 28;
     public static final int INPUT_COLS = 28;
     public static final int OUTPUT_CLASSES = 10;
@@ -41,6 +41,8 @@ public class Constants {
     public static final int[] ALLOWED_CONV_STRIDES = {1, 2};
     public static final double LEARNING_RATE_FULLY_CONNECTED = 0.01;
     public static final double L2_REGULARIZATION_LAMBDA = 0.01;
+    // Кількість частин, на які ділиться батч при навчанні однієї архітектури (NeuralNetwork.setTrainingThreads)
+    public static final int TRAINING_THREADS = Runtime.getRuntime().availableProcessors();
 
     // Evolution-related parameters
     public static int POPULATION_SIZE = 40;
@@ -51,4 +53,11 @@ public class Constants {
     public static float DATASET_FRACTION = 0.01f;
     public static final int EPOCHS = DATASET_FRACTION == 0.1f ? 3 : 5;
     public static final int BATCH_SIZE = DATASET_FRACTION == 0.1f ? 32 : 16;
+    // Оцінка fitness лише порівнює архітектури між собою, тому GEMM з операндами float32 достатньо
+    // (ваги, активації та градієнти залишаються в double)
+    public static final GemmPrecision FITNESS_GEMM_PRECISION = GemmPrecision.FLOAT;
+    // Проміжний checkpoint генетичного алгоритму після кожних N оцінених особин (і завжди в кінці покоління)
+    public static final int GA_CHECKPOINT_INTERVAL = 5;
+    // Кількість тренувальних зображень для калібрування кроків int8 активацій (QuantizedNetwork)
+    public static final int QUANTIZATION_CALIBRATION_SIZE = 1000;
 }
@@ -1,47 +1,200 @@
 package natanius.thesis.cnn.evolution.data;
 
-import static java.lang.Integer.parseInt;
-import static java.util.stream.Collectors.toList;
+import static java.nio.file.StandardOpenOption.READ;
 import static lombok.AccessLevel.PRIVATE;
-import static natanius.thesis.cnn.evolution.data.Constants.SCALE_FACTOR;
+import static natanius.thesis.cnn.evolution.data.Constants.INPUT_COLS;
+import static natanius.thesis.cnn.evolution.data.Constants.INPUT_ROWS;
 
-import java.nio.file.Files;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.IntStream;
-import java.util.stream.Stream;
 import lombok.NoArgsConstructor;
+import natanius.thesis.cnn.evolution.kernels.Parallel;
 
 @NoArgsConstructor(access = PRIVATE)
 public class DataReader {
 
+    public static final String TRAIN_CSV = "data/mnist_train.csv";
+    public static final String TEST_CSV = "data/mnist_test.csv";
+    public static final String TRAIN_IMAGES_IDX = "data/train-images-idx3-ubyte";
+    public static final String TRAIN_LABELS_IDX = "data/train-labels-idx1-ubyte";
+    public static final String TEST_IMAGES_IDX = "data/t10k-images-idx3-ubyte";
+    public static final String TEST_LABELS_IDX = "data/t10k-labels-idx1-ubyte";
+    private static final int PIXELS = INPUT_ROWS * INPUT_COLS;
+    // Розмір вікна, яким байти CSV копіюються з відображеного файлу в масив для розбору
+    private static final int WINDOW = 1 << 16;
+
     public static List<Image> loadTrainData() {
         System.out.println("Loading train data...");
-        return readData("data/mnist_train.csv");
+        return load(TRAIN_IMAGES_IDX, TRAIN_LABELS_IDX, TRAIN_CSV);
     }
 
     public static List<Image> loadTestData() {
         System.out.println("Loading test data...");
-        return readData("data/mnist_test.csv");
+        return load(TEST_IMAGES_IDX, TEST_LABELS_IDX, TEST_CSV);
     }
+
+    /**
+     * IDX файли (можливо, .gz), якщо вони є, інакше CSV (перетворити його в IDX можна через CsvToIdx)
+     */
+    private static List<Image> load(String imagesIdx, String labelsIdx, String csv) {
+        Path images = IdxDataset.find(imagesIdx);
+        Path labels = IdxDataset.find(labelsIdx);
+        if (images != null && labels != null) {
+            return IdxDataset.read(images, labels);
+        }
+        return readData(csv);
+    }
+
+    /**
+     * Розбирає CSV "label,pixel0,...,pixel783" побайтово з файлу, відображеного в пам'ять, без String та split.
+     *
+     * <p>Файл ділиться на частини, межі яких зсунуті на початок рядка. Перший паралельний прохід
+     * рахує рядки кожної частини, що дає номер першого рядка частини в наборі; другий паралельно розбирає
+     * числа прямо в заздалегідь виділений масив пікселів (1 байт на піксель). Зображення посилаються
+     * на цей масив (див. {@link Image#packed}), тому розбір не створює об'єктів на кожне число чи рядок.
+     */
     public static List<Image> readData(String path) {
-        try (Stream<String> lines = Files.lines(Paths.get(path))) {
-            return lines.parallel()
-                .map(DataReader::parseLine)
-                .collect(toList());
-        } catch (Exception e) {
-            throw new RuntimeException("File not found " + path, e);
+        ByteBuffer csv = map(path);
+        int size = csv.limit();
+
+        int chunks = Parallel.THREADS;
+        int[] bounds = new int[chunks + 1];
+        bounds[chunks] = size;
+        for (int c = 1; c < chunks; c++) {
+            bounds[c] = lineStart(csv, Math.max(bounds[c - 1], (int) ((long) size * c / chunks)));
+        }
+
+        // Прохід 1: кількість рядків у кожній частині → номер першого рядка частини
+        int[] firstRow = new int[chunks + 1];
+        Parallel.forEachSlice(chunks, 1, size, (from, to) -> {
+            for (int c = from; c < to; c++) {
+                firstRow[c + 1] = countRows(csv, bounds[c], bounds[c + 1]);
+            }
+        });
+        for (int c = 0; c < chunks; c++) {
+            firstRow[c + 1] += firstRow[c];
+        }
+
+        // Прохід 2: розбір чисел у спільні масиви
+        int count = firstRow[chunks];
+        byte[] pixels = new byte[count * PIXELS];
+        int[] labels = new int[count];
+        Parallel.forEachSlice(chunks, 1, size, (from, to) -> {
+            for (int c = from; c < to; c++) {
+                parseRows(csv, bounds[c], bounds[c + 1], firstRow[c], pixels, labels, path);
+            }
+        });
+
+        ByteBuffer packed = ByteBuffer.wrap(pixels);
+        List<Image> images = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            images.add(Image.packed(packed, i * PIXELS, labels[i]));
+        }
+        return images;
+    }
+
+    private static ByteBuffer map(String path) {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalStateException("CSV file is larger than 2 GB: " + path);
+            }
+            return channel.map(MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("File not found " + path, e);
+        }
+    }
+
+    /**
+     * Перша позиція, не менша за position, з якої починається рядок (або кінець файлу)
+     */
+    private static int lineStart(ByteBuffer csv, int position) {
+        int p = position;
+        while (p > 0 && p < csv.limit() && csv.get(p - 1) != '\n') {
+            p++;
         }
+        return p;
     }
 
-    private static Image parseLine(String line) {
-        String[] items = line.split(",");
-        int label = parseInt(items[0]);
-        double[][] data = new double[28][28];
+    /**
+     * Кількість непорожніх рядків у [start, end)
+     */
+    private static int countRows(ByteBuffer csv, int start, int end) {
+        byte[] window = new byte[WINDOW];
+        int rows = 0;
+        boolean content = false;
+        for (int base = start; base < end; base += WINDOW) {
+            int length = Math.min(WINDOW, end - base);
+            csv.get(base, window, 0, length);
+            for (int i = 0; i < length; i++) {
+                byte b = window[i];
+                if (b == '\n') {
+                    rows += content ? 1 : 0;
+                    content = false;
+                } else if (b > ' ') {
+                    content = true;
+                }
+            }
+        }
+        return content ? rows + 1 : rows;
+    }
 
-        IntStream.range(1, items.length)
-            .forEach(i -> data[(i - 1) / 28][(i - 1) % 28] = (double) parseInt(items[i]) / SCALE_FACTOR); // нормализация данных
+    /**
+     * Розбирає рядки [start, end) починаючи з рядка row набору: значення 0 — мітка, 1..784 — пікселі 0..255.
+     * Пропуски та '\r' ігноруються, порожні рядки пропускаються.
+     */
+    private static void parseRows(ByteBuffer csv, int start, int end, int row, byte[] pixels, int[] labels, String path) {
+        // Байти читаються вікнами в масив; після останнього вікна частини дописується '\n',
+        // щоб завершити рядок без переводу рядка в кінці файлу
+        byte[] window = new byte[WINDOW + 1];
+        int column = 0;
+        int value = 0;
+        boolean digits = false;
+        for (int base = start; base <= end; base += WINDOW) {
+            int length = Math.min(WINDOW, end - base);
+            csv.get(base, window, 0, length);
+            if (base + length == end) {
+                window[length++] = '\n';
+            }
+            for (int i = 0; i < length; i++) {
+                byte b = window[i];
+                if (b >= '0' && b <= '9') {
+                    value = value * 10 + (b - '0');
+                    digits = true;
+                } else if (b == ',' || b == '\n') {
+                    if (b == '\n' && column == 0 && !digits) {
+                        continue;  // порожній рядок
+                    }
+                    if (!digits || value > 255 || column > PIXELS) {
+                        throw new IllegalStateException("Invalid value " + (column + 1) + " in row " + (row + 1) + " of " + path);
+                    }
+                    if (column == 0) {
+                        labels[row] = value;
+                    } else {
+                        pixels[row * PIXELS + column - 1] = (byte) value;
+                    }
+                    column++;
+                    value = 0;
+                    digits = false;
 
-        return new Image(data, label);
+                    if (b == '\n') {
+                        if (column != PIXELS + 1) {
+                            throw new IllegalStateException("Row " + (row + 1) + " of " + path + " has " + column
+                                + " values, expected " + (PIXELS + 1));
+                        }
+                        column = 0;
+                        row++;
+                    }
+                } else if (b != '\r' && b != ' ') {
+                    throw new IllegalStateException("Unexpected character '" + (char) b + "' in row " + (row + 1) + " of " + path);
+                }
+            }
+        }
     }
 }
@@ -0,0 +1,125 @@
+package natanius.thesis.cnn.evolution.data;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import natanius.thesis.cnn.evolution.genes.Chromosome;
+import natanius.thesis.cnn.evolution.genes.Individual;
+
+/**
+ * Стан запуску генетичного алгоритму, з якого його можна продовжити (--resume).
+ *
+ * <p>Формат (DataOutputStream, big-endian):
+ * <pre>
+ *   int     magic = "CNNE", int версія формату
+ *   float   частка датасету, int номер покоління (з 0), boolean cacheChecked
+ *   long, double, boolean — стан {@link ResumableRandom}
+ *   int N, N × (UTF хромосома, float fitness) — популяція
+ *   int M, M × (UTF хромосома, boolean є fitness, [float fitness]) — кеш оцінених архітектур
+ * </pre>
+ *
+ * @param generation   покоління, яке потрібно виконати наступним
+ * @param cacheChecked популяцію покоління вже перевірено за кешем (checkpoint посеред оцінювання):
+ *                     неоцінені особини не можна замінювати, бо їх хромосоми вже є в кеші
+ */
+public record EvolutionCheckpoint(float datasetFraction,
+                                  int generation,
+                                  boolean cacheChecked,
+                                  List<Individual> population,
+                                  Map<String, Float> cache,
+                                  ResumableRandom.State random) {
+
+    private static final int MAGIC = 'C' << 24 | 'N' << 16 | 'N' << 8 | 'E';
+    private static final int VERSION = 1;
+
+    /**
+     * Записує checkpoint у тимчасовий файл поруч і атомарно замінює попередній: після збою
+     * на диску залишається або старий, або новий checkpoint повністю.
+     */
+    public void save(Path path) {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            try (FileOutputStream file = new FileOutputStream(temporary.toFile());
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeFloat(datasetFraction);
+                out.writeInt(generation);
+                out.writeBoolean(cacheChecked);
+                out.writeLong(random.seed());
+                out.writeDouble(random.nextNextGaussian());
+                out.writeBoolean(random.haveNextNextGaussian());
+
+                out.writeInt(population.size());
+                for (Individual individual : population) {
+                    out.writeUTF(individual.getChromosome().toString());
+                    out.writeFloat(individual.getFitness());
+                }
+
+                out.writeInt(cache.size());
+                for (Map.Entry<String, Float> entry : cache.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeBoolean(entry.getValue() != null);
+                    if (entry.getValue() != null) {
+                        out.writeFloat(entry.getValue());
+                    }
+                }
+                out.flush();
+                file.getFD().sync();
+            }
+            Files.move(temporary, path, REPLACE_EXISTING, ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot save evolution checkpoint to " + path, e);
+        }
+    }
+
+    public static EvolutionCheckpoint load(Path path) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IllegalStateException("Not an evolution checkpoint: " + path);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IllegalStateException("Unsupported checkpoint version " + version + " in " + path);
+            }
+            float datasetFraction = in.readFloat();
+            int generation = in.readInt();
+            boolean cacheChecked = in.readBoolean();
+            ResumableRandom.State random = new ResumableRandom.State(in.readLong(), in.readDouble(), in.readBoolean());
+
+            int populationSize = in.readInt();
+            List<Individual> population = new ArrayList<>(populationSize);
+            for (int i = 0; i < populationSize; i++) {
+                Individual individual = new Individual(Chromosome.parse(in.readUTF()));
+                individual.setFitness(in.readFloat());
+                population.add(individual);
+            }
+
+            int cacheSize = in.readInt();
+            Map<String, Float> cache = new LinkedHashMap<>();
+            for (int i = 0; i < cacheSize; i++) {
+                String chromosome = in.readUTF();
+                cache.put(chromosome, in.readBoolean() ? in.readFloat() : null);
+            }
+            return new EvolutionCheckpoint(datasetFraction, generation, cacheChecked, population, cache, random);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot load evolution checkpoint from " + path, e);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package natanius.thesis.cnn.evolution.data;
+
+import static java.lang.Integer.parseInt;
+import static java.nio.file.StandardOpenOption.READ;
+import static lombok.AccessLevel.PRIVATE;
+import static natanius.thesis.cnn.evolution.data.Constants.INPUT_COLS;
+import static natanius.thesis.cnn.evolution.data.Constants.INPUT_ROWS;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import lombok.NoArgsConstructor;
+
+/**
+ * Набір MNIST у стандартному бінарному форматі IDX (усі цілі big-endian):
+ * <pre>
+ *   images: int 0x00000803, int N, int rows, int cols, N × rows × cols байтів пікселів 0..255
+ *   labels: int 0x00000801, int N, N байтів міток
+ * </pre>
+ * Нестиснуті файли відображаються в пам'ять ({@link FileChannel#map}), стиснуті (.gz) розпаковуються
+ * в один масив. Зображення посилаються на спільний буфер пікселів і нормалізуються лише при
+ * завантаженні в батч (див. {@link Image#packed}), тому читання не розбирає текст і не створює
+ * масивів пікселів на кожне зображення.
+ */
+@NoArgsConstructor(access = PRIVATE)
+public class IdxDataset {
+
+    private static final int IMAGES_MAGIC = 0x00000803;
+    private static final int LABELS_MAGIC = 0x00000801;
+    private static final int IMAGES_HEADER = 16;
+    private static final int LABELS_HEADER = 8;
+    private static final String GZIP_SUFFIX = ".gz";
+
+    /**
+     * Шлях до файлу path або до його стиснутої копії path.gz (null, якщо немає жодного)
+     */
+    public static Path find(String path) {
+        for (Path candidate : List.of(Path.of(path), Path.of(path + GZIP_SUFFIX))) {
+            if (Files.isRegularFile(candidate)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    public static List<Image> read(Path imagesPath, Path labelsPath) {
+        ByteBuffer images = open(imagesPath);
+        ByteBuffer labels = open(labelsPath);
+
+        checkMagic(images, IMAGES_MAGIC, imagesPath);
+        checkMagic(labels, LABELS_MAGIC, labelsPath);
+        int count = images.getInt(4);
+        int rows = images.getInt(8);
+        int cols = images.getInt(12);
+        if (rows != INPUT_ROWS || cols != INPUT_COLS) {
+            throw new IllegalStateException("Expected " + INPUT_ROWS + "x" + INPUT_COLS + " images in "
+                + imagesPath + ", got " + rows + "x" + cols);
+        }
+        if (labels.getInt(4) != count) {
+            throw new IllegalStateException(imagesPath + " has " + count + " images, but "
+                + labelsPath + " has " + labels.getInt(4) + " labels");
+        }
+        int pixels = rows * cols;
+        if (images.limit() < IMAGES_HEADER + (long) count * pixels || labels.limit() < LABELS_HEADER + count) {
+            throw new IllegalStateException("Truncated IDX data: " + imagesPath + ", " + labelsPath);
+        }
+
+        List<Image> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(Image.packed(images, IMAGES_HEADER + i * pixels, labels.get(LABELS_HEADER + i) & 0xFF));
+        }
+        return result;
+    }
+
+    /**
+     * Перетворює CSV "label,pixel0,...,pixel783" (формат {@link DataReader}) у пару IDX файлів.
+     *
+     * @return кількість перетворених зображень
+     */
+    public static int convertCsv(Path csvPath, Path imagesPath, Path labelsPath) {
+        int pixels = INPUT_ROWS * INPUT_COLS;
+        ByteArrayOutputStream images = new ByteArrayOutputStream();
+        ByteArrayOutputStream labels = new ByteArrayOutputStream();
+        int count = 0;
+
+        try (Stream<String> lines = Files.lines(csvPath)) {
+            for (String line : (Iterable<String>) lines::iterator) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                String[] items = line.split(",");
+                if (items.length != pixels + 1) {
+                    throw new IllegalArgumentException("Line " + (count + 1) + " of " + csvPath + " has "
+                        + items.length + " values, expected " + (pixels + 1));
+                }
+                labels.write(parseUnsignedByte(items[0], csvPath, count));
+                for (int i = 1; i < items.length; i++) {
+                    images.write(parseUnsignedByte(items[i], csvPath, count));
+                }
+                count++;
+            }
+
+            write(imagesPath, new int[]{IMAGES_MAGIC, count, INPUT_ROWS, INPUT_COLS}, images);
+            write(labelsPath, new int[]{LABELS_MAGIC, count}, labels);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot convert " + csvPath, e);
+        }
+        return count;
+    }
+
+    private static int parseUnsignedByte(String value, Path csvPath, int line) {
+        int parsed = parseInt(value.trim());
+        if (parsed < 0 || parsed > 255) {
+            throw new IllegalArgumentException("Value " + parsed + " on line " + (line + 1) + " of "
+                + csvPath + " does not fit in an unsigned byte");
+        }
+        return parsed;
+    }
+
+    private static void write(Path path, int[] header, ByteArrayOutputStream body) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            for (int value : header) {
+                out.writeInt(value);
+            }
+            body.writeTo(out);
+        }
+    }
+
+    private static ByteBuffer open(Path path) {
+        try {
+            if (path.getFileName().toString().endsWith(GZIP_SUFFIX)) {
+                try (InputStream in = new GZIPInputStream(Files.newInputStream(path), 1 << 16)) {
+                    return ByteBuffer.wrap(in.readAllBytes());
+                }
+            }
+            // Відображення залишається дійсним після закриття каналу
+            try (FileChannel channel = FileChannel.open(path, READ)) {
+                return channel.map(MapMode.READ_ONLY, 0, channel.size());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read " + path, e);
+        }
+    }
+
+    private static void checkMagic(ByteBuffer buffer, int magic, Path path) {
+        if (buffer.limit() < 4 || buffer.getInt(0) != magic) {
+            throw new IllegalStateException("Not an IDX file with magic 0x" + Integer.toHexString(magic) + ": " + path);
+        }
+    }
+}
@@ -1,15 +1,101 @@
 package natanius.thesis.cnn.evolution.data;
 
-public record Image(double[][] data, int label) {
+import static natanius.thesis.cnn.evolution.data.Constants.INPUT_COLS;
+import static natanius.thesis.cnn.evolution.data.Constants.INPUT_ROWS;
+import static natanius.thesis.cnn.evolution.data.Constants.SCALE_FACTOR;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Зображення з міткою. Пікселі зберігаються або як нормалізовані рядки double[rows][cols],
+ * або як беззнакові байти 0..255 у спільному буфері набору (наприклад, IDX файл, відображений у пам'ять):
+ * такі пікселі нормалізуються лише при копіюванні в тензор батча ({@link #copyTo}),
+ * тому набір займає 1 байт на піксель замість 8 і не створює масивів на кожне зображення.
+ */
+public final class Image {
+
+    private final double[][] data;
+    private final ByteBuffer pixels;
+    private final int offset;
+    private final int label;
+
+    public Image(double[][] data, int label) {
+        this.data = data;
+        this.pixels = null;
+        this.offset = 0;
+        this.label = label;
+    }
+
+    private Image(ByteBuffer pixels, int offset, int label) {
+        this.data = null;
+        this.pixels = pixels;
+        this.offset = offset;
+        this.label = label;
+    }
+
+    /**
+     * Зображення INPUT_ROWS × INPUT_COLS з беззнакових байтів pixels[offset..] (row-major).
+     * Буфер читається лише абсолютними get, тому може бути спільним для всіх зображень і потоків.
+     */
+    public static Image packed(ByteBuffer pixels, int offset, int label) {
+        return new Image(pixels, offset, label);
+    }
+
+    public int label() {
+        return label;
+    }
+
+    public int rows() {
+        return data != null ? data.length : INPUT_ROWS;
+    }
+
+    public int cols() {
+        return data != null ? data[0].length : INPUT_COLS;
+    }
+
+    /**
+     * Нормалізовані пікселі [rows][cols] (для упакованого зображення — нова копія)
+     */
+    public double[][] data() {
+        if (data != null) {
+            return data;
+        }
+        double[][] decoded = new double[INPUT_ROWS][INPUT_COLS];
+        for (int r = 0; r < INPUT_ROWS; r++) {
+            copyRow(r, decoded[r], 0);
+        }
+        return decoded;
+    }
+
+    /**
+     * Записує нормалізовані пікселі row-major у target, починаючи з targetOffset (rows × cols значень)
+     */
+    public void copyTo(double[] target, int targetOffset) {
+        int cols = cols();
+        for (int r = 0; r < rows(); r++) {
+            if (data != null) {
+                System.arraycopy(data[r], 0, target, targetOffset + r * cols, cols);
+            } else {
+                copyRow(r, target, targetOffset + r * cols);
+            }
+        }
+    }
+
+    private void copyRow(int row, double[] target, int targetOffset) {
+        int base = offset + row * INPUT_COLS;
+        for (int c = 0; c < INPUT_COLS; c++) {
+            target[targetOffset + c] = (double) (pixels.get(base + c) & 0xFF) / SCALE_FACTOR;
+        }
+    }
 
     @Override
     public String toString() {
 
         StringBuilder s = new StringBuilder(label + ", \n");
 
-        for (double[] datum : data) {
-            for (int j = 0; j < data[0].length; j++) {
-                s.append(datum[j]).append(", ");
+        for (double[] datum : data()) {
+            for (double pixel : datum) {
+                s.append(pixel).append(", ");
             }
             s.append("\n");
         }
@@ -1,5 +1,7 @@
 package natanius.thesis.cnn.evolution.data;
 
+import static natanius.thesis.cnn.evolution.kernels.Kernels.BACKEND;
+
 import lombok.experimental.UtilityClass;
 
 @UtilityClass
@@ -8,18 +10,12 @@ public class MatrixUtility {
     public static void add(double[][] a, double[][] b) {
         int length = a.length;
         for (int i = 0; i < length; i++) {
-            double[] aRow = a[i];
-            double[] bRow = b[i];
-            for (int j = 0; j < length; j++) {
-                aRow[j] += bRow[j];
-            }
+            BACKEND.axpy(1.0, b[i], 0, a[i], 0, length);
         }
     }
 
     public static void add(double[] a, double[] b) {
-        for (int i = 0; i < a.length; i++) {
-            a[i] += b[i];
-        }
+        BACKEND.axpy(1.0, b, 0, a, 0, a.length);
     }
 
 }
@@ -0,0 +1,150 @@
+package natanius.thesis.cnn.evolution.data;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static lombok.AccessLevel.PRIVATE;
+import static natanius.thesis.cnn.evolution.genes.GeneticFunctions.buildNetworkFromChromosome;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.NoArgsConstructor;
+import natanius.thesis.cnn.evolution.genes.Chromosome;
+import natanius.thesis.cnn.evolution.layers.Layer;
+import natanius.thesis.cnn.evolution.network.NeuralNetwork;
+
+/**
+ * Бінарний формат збереженої моделі (усі числа little-endian):
+ * <pre>
+ *   int    magic = "CNNM"
+ *   int    версія формату
+ *   int    L, L байтів UTF-8 — хромосома (Chromosome.toString)
+ *   int    B — кількість блоків параметрів
+ *   long   × B — кількість double у кожному блоці
+ *   0..7 байтів вирівнювання до 8
+ *   double × (сума блоків) — блоки один за одним
+ * </pre>
+ * Блоки йдуть у порядку шарів мережі, у кожному шарі — {@link Layer#getParameterBlocks()}
+ * (фільтри та biases згортки, ваги та biases повнозв'язного шару).
+ *
+ * <p>Архітектура відновлюється з хромосоми тим самим NetworkBuilder, що й під час навчання, а параметри
+ * копіюються масовими читаннями з файлу, відображеного в пам'ять ({@link FileChannel#map}) — без
+ * розбору та проміжних буферів, тому модель у кілька мегабайтів готова до inference за мілісекунди.
+ */
+@NoArgsConstructor(access = PRIVATE)
+public class ModelCheckpoint {
+
+    private static final int MAGIC = 'C' | 'N' << 8 | 'N' << 16 | 'M' << 24;
+    private static final int VERSION = 1;
+
+    /**
+     * Зберігає параметри мережі, побудованої з chromosome. Файл записується поруч під тимчасовим
+     * ім'ям і атомарно замінює попередній, тому обірваний запис не псує збережену модель.
+     */
+    public static void save(NeuralNetwork network, Chromosome chromosome, Path path) {
+        List<double[]> blocks = parameterBlocks(network);
+        byte[] architecture = chromosome.toString().getBytes(UTF_8);
+        long dataOffset = align(4L + 4 + 4 + architecture.length + 4 + 8L * blocks.size());
+        long size = dataOffset;
+        for (double[] block : blocks) {
+            size += 8L * block.length;
+        }
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            try (FileChannel channel = FileChannel.open(temporary, CREATE, TRUNCATE_EXISTING, READ, WRITE)) {
+                MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, size);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(MAGIC).putInt(VERSION).putInt(architecture.length).put(architecture);
+                buffer.putInt(blocks.size());
+                for (double[] block : blocks) {
+                    buffer.putLong(block.length);
+                }
+                buffer.position((int) dataOffset);
+                for (double[] block : blocks) {
+                    buffer.asDoubleBuffer().put(block);
+                    buffer.position(buffer.position() + 8 * block.length);
+                }
+                buffer.force();
+            }
+            Files.move(temporary, path, REPLACE_EXISTING, ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot save model to " + path, e);
+        }
+    }
+
+    /**
+     * Завантажує модель, збережену {@link #save}: будує мережу з хромосоми та заповнює її параметри.
+     *
+     * @throws IllegalStateException якщо файл не є моделлю, має іншу версію формату або блоки
+     *                               не відповідають архітектурі
+     */
+    public static NeuralNetwork load(Path path) {
+        try (FileChannel channel = FileChannel.open(path, READ)) {
+            MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (buffer.getInt() != MAGIC) {
+                throw new IllegalStateException("Not a model checkpoint: " + path);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IllegalStateException("Unsupported checkpoint version " + version + " in " + path);
+            }
+            byte[] architecture = new byte[buffer.getInt()];
+            buffer.get(architecture);
+            Chromosome chromosome = Chromosome.parse(new String(architecture, UTF_8));
+
+            NeuralNetwork network = buildNetworkFromChromosome(chromosome);
+            List<double[]> blocks = parameterBlocks(network);
+            int blockCount = buffer.getInt();
+            if (blockCount != blocks.size()) {
+                throw new IllegalStateException("Checkpoint has " + blockCount + " parameter blocks, "
+                    + chromosome + " needs " + blocks.size());
+            }
+            for (int i = 0; i < blockCount; i++) {
+                long length = buffer.getLong();
+                if (length != blocks.get(i).length) {
+                    throw new IllegalStateException("Parameter block " + i + " has " + length
+                        + " values, expected " + blocks.get(i).length);
+                }
+            }
+
+            buffer.position((int) align(buffer.position()));
+            for (double[] block : blocks) {
+                buffer.asDoubleBuffer().get(block);
+                buffer.position(buffer.position() + 8 * block.length);
+            }
+            return network;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot load model from " + path, e);
+        }
+    }
+
+    private static List<double[]> parameterBlocks(NeuralNetwork network) {
+        List<double[]> blocks = new ArrayList<>();
+        for (Layer layer : network.getLayers()) {
+            blocks.addAll(layer.getParameterBlocks());
+        }
+        return blocks;
+    }
+
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+}
@@ -0,0 +1,92 @@
+package natanius.thesis.cnn.evolution.data;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link Random} зі станом, який можна зберегти та відновити (checkpoint генетичного алгоритму).
+ *
+ * <p>Стан java.util.Random закритий, тому лінійний конгруентний генератор і кеш nextGaussian
+ * повторені тут з тими самими константами: послідовність чисел для того самого seed збігається
+ * з java.util.Random біт у біт. Решта методів Random (nextInt, nextDouble, nextBoolean, ...)
+ * працює через {@link #next(int)}, який, як і в java.util.Random, оновлює seed через CAS без блокування:
+ * генератор спільний для всіх паралельних навчань генетичного алгоритму.
+ */
+public final class ResumableRandom extends Random {
+
+    private static final long serialVersionUID = 1L;
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    /**
+     * Повний стан генератора
+     */
+    public record State(long seed, double nextNextGaussian, boolean haveNextNextGaussian) {
+    }
+
+    // Без ініціалізаторів: конструктор Random викликає перевизначений setSeed ще до ініціалізації полів
+    // підкласу, тож поле seed створюється саме там, а ініціалізатор його перезаписав би
+    private AtomicLong seed;
+    private double nextNextGaussian;
+    private boolean haveNextNextGaussian;
+
+    public ResumableRandom(long seed) {
+        super(seed);
+    }
+
+    @Override
+    public synchronized void setSeed(long seed) {
+        long scrambled = (seed ^ MULTIPLIER) & MASK;
+        if (this.seed == null) {
+            this.seed = new AtomicLong(scrambled);
+        } else {
+            this.seed.set(scrambled);
+        }
+        this.haveNextNextGaussian = false;
+    }
+
+    @Override
+    protected int next(int bits) {
+        long current;
+        long next;
+        do {
+            current = seed.get();
+            next = (current * MULTIPLIER + ADDEND) & MASK;
+        } while (!seed.compareAndSet(current, next));
+        return (int) (next >>> (48 - bits));
+    }
+
+    /**
+     * Полярний метод Марсальї, як у {@link Random#nextGaussian()}: друге значення пари кешується
+     */
+    @Override
+    public synchronized double nextGaussian() {
+        if (haveNextNextGaussian) {
+            haveNextNextGaussian = false;
+            return nextNextGaussian;
+        }
+        double v1;
+        double v2;
+        double s;
+        do {
+            v1 = 2 * nextDouble() - 1;
+            v2 = 2 * nextDouble() - 1;
+            s = v1 * v1 + v2 * v2;
+        } while (s >= 1 || s == 0);
+        double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+        nextNextGaussian = v2 * multiplier;
+        haveNextNextGaussian = true;
+        return v1 * multiplier;
+    }
+
+    public synchronized State getState() {
+        return new State(seed.get(), nextNextGaussian, haveNextNextGaussian);
+    }
+
+    public synchronized void setState(State state) {
+        this.seed.set(state.seed());
+        this.nextNextGaussian = state.nextNextGaussian();
+        this.haveNextNextGaussian = state.haveNextNextGaussian();
+    }
+}
@@ -0,0 +1,118 @@
+package natanius.thesis.cnn.evolution.data;
+
+import java.util.List;
+import lombok.Getter;
+
+/**
+ * Батч тензор у форматі NCHW: усі значення батчу зберігаються в одному неперервному масиві.
+ *
+ * <p><b>Розкладка в пам'яті:</b>
+ * <pre>
+ * index(n, c, r, col) = n × sampleStride + c × channelStride + r × cols + col
+ * sampleStride  = channels × rows × cols
+ * channelStride = rows × cols
+ * </pre>
+ *
+ * <p>Шари обмінюються тензорами напряму, тому на межах шарів немає копіювання та
+ * перетворень між векторами і матрицями. Вихід повнозв'язного шару має форму [N][1][1][outLength].
+ */
+@Getter
+public class Tensor {
+
+    private final int batchSize;
+    private final int channels;
+    private final int rows;
+    private final int cols;
+    private final double[] data;
+
+    public Tensor(int batchSize, int channels, int rows, int cols) {
+        this(batchSize, channels, rows, cols, new double[batchSize * channels * rows * cols]);
+    }
+
+    /**
+     * Тензор над існуючим буфером. Буфер може бути більшим за тензор (наприклад, буфер {@link Workspace},
+     * виділений під максимальний батч) — тоді використовуються лише перші {@link #getSize()} елементів.
+     */
+    public Tensor(int batchSize, int channels, int rows, int cols, double[] data) {
+        if (data.length < batchSize * channels * rows * cols) {
+            throw new IllegalArgumentException(
+                "Expected at least " + batchSize * channels * rows * cols + " elements for shape ["
+                    + batchSize + "][" + channels + "][" + rows + "][" + cols + "], got " + data.length
+            );
+        }
+        this.batchSize = batchSize;
+        this.channels = channels;
+        this.rows = rows;
+        this.cols = cols;
+        this.data = data;
+    }
+
+    /**
+     * Збирає батч одноканальних зображень у тензор [N][1][rows][cols].
+     */
+    public static Tensor fromImages(List<Image> images) {
+        Image first = images.getFirst();
+        Tensor tensor = new Tensor(images.size(), 1, first.rows(), first.cols());
+        tensor.loadImages(images, 0);
+        return tensor;
+    }
+
+    /**
+     * Копіює batchSize зображень, починаючи з images[from], у цей тензор [N][1][rows][cols].
+     */
+    public void loadImages(List<Image> images, int from) {
+        for (int n = 0; n < batchSize; n++) {
+            images.get(from + n).copyTo(data, n * rows * cols);
+        }
+    }
+
+    /**
+     * Огортає вектор одного прикладу в тензор [1][channels][rows][cols] без копіювання.
+     */
+    public static Tensor fromVector(double[] vector, int channels, int rows, int cols) {
+        return new Tensor(1, channels, rows, cols, vector);
+    }
+
+    /**
+     * Кількість елементів тензора (буфер може бути довшим)
+     */
+    public int getSize() {
+        return batchSize * getSampleStride();
+    }
+
+    public int getSampleStride() {
+        return channels * rows * cols;
+    }
+
+    public int getChannelStride() {
+        return rows * cols;
+    }
+
+    public int offset(int n, int c, int r, int col) {
+        return ((n * channels + c) * rows + r) * cols + col;
+    }
+
+    public double get(int n, int c, int r, int col) {
+        return data[offset(n, c, r, col)];
+    }
+
+    public void set(int n, int c, int r, int col, double value) {
+        data[offset(n, c, r, col)] = value;
+    }
+
+    /**
+     * Повертає тензор з іншою формою прикладу над тим самим буфером (без копіювання).
+     */
+    public Tensor reshape(int channels, int rows, int cols) {
+        return new Tensor(batchSize, channels, rows, cols, data);
+    }
+
+    /**
+     * Копіює один приклад батчу в окремий вектор.
+     */
+    public double[] getSample(int n) {
+        double[] sample = new double[getSampleStride()];
+        System.arraycopy(data, n * getSampleStride(), sample, 0, sample.length);
+        return sample;
+    }
+}
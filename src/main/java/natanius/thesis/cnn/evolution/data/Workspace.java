@@ -0,0 +1,134 @@
+package natanius.thesis.cnn.evolution.data;
+
+import static java.util.Arrays.fill;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Робоча пам'ять шару: буфери, що повторно використовуються від батча до батча.
+ *
+ * <p>Кожен буфер займає свій слот (номер задає шар). Буфер виділяється під час першого запиту і
+ * перевиділяється лише тоді, коли запитаний розмір більший за поточний, тобто після першого батча
+ * максимального розміру forward та backward pass більше не виділяють пам'ять.
+ *
+ * <p>Тензори над буферами кешуються за розміром батча, тому коротший останній батч епохи теж
+ * отримує свій тензор лише один раз. Лічильник {@link #getAllocationCount()} рахує всі виділення
+ * (буфери та тензори) в усіх workspace і дозволяє перевірити, що крок навчання після прогріву
+ * нічого не виділяє.
+ *
+ * <p>Вміст буфера між запитами не гарантується: шар сам обнуляє те, що накопичує.
+ */
+public class Workspace {
+
+    private static final LongAdder ALLOCATIONS = new LongAdder();
+
+    private final double[][] buffers;
+    private final int[][] intBuffers;
+    private final byte[][] byteBuffers;
+    private final Tensor[][] tensors;
+
+    public Workspace(int slots) {
+        buffers = new double[slots][];
+        intBuffers = new int[slots][];
+        byteBuffers = new byte[slots][];
+        tensors = new Tensor[slots][];
+    }
+
+    /**
+     * Кількість виділень пам'яті в усіх workspace з моменту запуску
+     */
+    public static long getAllocationCount() {
+        return ALLOCATIONS.sum();
+    }
+
+    /**
+     * Буфер щонайменше з size елементів (вміст довільний)
+     */
+    public double[] buffer(int slot, int size) {
+        double[] buffer = buffers[slot];
+        if (buffer == null || buffer.length < size) {
+            buffer = new double[size];
+            buffers[slot] = buffer;
+            ALLOCATIONS.increment();
+        }
+        return buffer;
+    }
+
+    /**
+     * Буфер щонайменше з size елементів, перші size з яких дорівнюють 0
+     */
+    public double[] zeroed(int slot, int size) {
+        double[] buffer = buffer(slot, size);
+        fill(buffer, 0, size, 0.0);
+        return buffer;
+    }
+
+    /**
+     * Цілочисельний буфер щонайменше з size елементів (вміст довільний)
+     */
+    public int[] intBuffer(int slot, int size) {
+        int[] buffer = intBuffers[slot];
+        if (buffer == null || buffer.length < size) {
+            buffer = new int[size];
+            intBuffers[slot] = buffer;
+            ALLOCATIONS.increment();
+        }
+        return buffer;
+    }
+
+    /**
+     * Буфер int8 щонайменше з size елементів (вміст довільний)
+     */
+    public byte[] byteBuffer(int slot, int size) {
+        byte[] buffer = byteBuffers[slot];
+        if (buffer == null || buffer.length < size) {
+            buffer = new byte[size];
+            byteBuffers[slot] = buffer;
+            ALLOCATIONS.increment();
+        }
+        return buffer;
+    }
+
+    /**
+     * Тензор [batchSize][channels][rows][cols] над буфером слота (вміст довільний)
+     */
+    public Tensor tensor(int slot, int batchSize, int channels, int rows, int cols) {
+        return view(slot, slot, batchSize * channels * rows * cols, batchSize, channels, rows, cols);
+    }
+
+    /**
+     * Тензор [batchSize][channels][rows][cols] над буфером слота bufferSlot, довжина якого щонайменше
+     * bufferSize. Тензор кешується у слоті slot, тому кілька тензорів різної форми можуть спільно
+     * використовувати один буфер (наприклад, буфери з неперетинним часом життя в ExecutionPlan).
+     */
+    public Tensor view(int slot, int bufferSlot, int bufferSize, int batchSize, int channels, int rows, int cols) {
+        double[] buffer = buffer(bufferSlot, Math.max(bufferSize, batchSize * channels * rows * cols));
+
+        Tensor[] byBatchSize = tensors[slot];
+        if (byBatchSize == null || byBatchSize.length <= batchSize) {
+            byBatchSize = byBatchSize == null ? new Tensor[batchSize + 1] : Arrays.copyOf(byBatchSize, batchSize + 1);
+            tensors[slot] = byBatchSize;
+            ALLOCATIONS.increment();
+        }
+
+        // Тензор над старим (меншим) буфером більше не дійсний
+        Tensor tensor = byBatchSize[batchSize];
+        if (tensor == null || tensor.getData() != buffer
+            || tensor.getChannels() != channels || tensor.getRows() != rows || tensor.getCols() != cols) {
+            tensor = new Tensor(batchSize, channels, rows, cols, buffer);
+            byBatchSize[batchSize] = tensor;
+            ALLOCATIONS.increment();
+        }
+        return tensor;
+    }
+
+    /**
+     * Тензор над буфером слота з першими getSize() елементами, що дорівнюють 0
+     */
+    public Tensor zeroedTensor(int slot, int batchSize, int channels, int rows, int cols) {
+        Tensor tensor = tensor(slot, batchSize, channels, rows, cols);
+        fill(tensor.getData(), 0, tensor.getSize(), 0.0);
+        return tensor;
+    }
+}
@@ -24,6 +24,8 @@ import lombok.Getter;
 @AllArgsConstructor
 public class Chromosome {
 
+    private static final String GENE_SEPARATOR = " → ";
+
     private final List<LayerGene> layerGenes;
 
     /**
@@ -138,13 +140,24 @@ public class Chromosome {
         layerGenes.add(new LayerGene(FULLY_CONNECTED));
     }
 
+    /**
+     * Відновлює хромосому з рядка у форматі {@link #toString()} (наприклад, збереженого разом з моделлю).
+     */
+    public static Chromosome parse(String text) {
+        List<LayerGene> genes = new ArrayList<>();
+        for (String gene : text.split(GENE_SEPARATOR)) {
+            genes.add(LayerGene.parse(gene));
+        }
+        return new Chromosome(genes);
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
         for (int i = 0; i < layerGenes.size(); i++) {
             sb.append(layerGenes.get(i));
             if (i < layerGenes.size() - 1) {
-                sb.append(" → ");
+                sb.append(GENE_SEPARATOR);
             }
         }
         return sb.toString();
@@ -6,6 +6,7 @@ import static java.time.Instant.now;
 import static java.util.Comparator.comparingDouble;
 import static natanius.thesis.cnn.evolution.data.Constants.CROSSOVER_COUNT;
 import static natanius.thesis.cnn.evolution.data.Constants.ELITE_COUNT;
+import static natanius.thesis.cnn.evolution.data.Constants.FITNESS_GEMM_PRECISION;
 import static natanius.thesis.cnn.evolution.data.Constants.MUTANT_COUNT;
 import static natanius.thesis.cnn.evolution.data.Constants.POPULATION_SIZE;
 import static natanius.thesis.cnn.evolution.data.Constants.RANDOM;
@@ -13,13 +14,18 @@ import static natanius.thesis.cnn.evolution.genes.GeneticFunctions.buildNetworkF
 import static natanius.thesis.cnn.evolution.genes.GeneticFunctions.crossover;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.stream.IntStream;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 import natanius.thesis.cnn.evolution.data.Image;
+import natanius.thesis.cnn.evolution.data.ResumableRandom;
 import natanius.thesis.cnn.evolution.layers.Layer;
 import natanius.thesis.cnn.evolution.network.EpochTrainer;
 import natanius.thesis.cnn.evolution.network.NeuralNetwork;
@@ -28,11 +34,34 @@ import natanius.thesis.cnn.evolution.network.NeuralNetwork;
 public class GeneticAlgorithm {
 
     private final EpochTrainer epochTrainer = new EpochTrainer();
-    public static final Map<String, Float> CACHE = new HashMap<>();
+    // Оновлюється з паралельних оцінок; ітерація — у synchronized (CACHE)
+    public static final Map<String, Float> CACHE = Collections.synchronizedMap(new HashMap<>());
+
+    /**
+     * Викликається після кожної оціненої особини (з потоків оцінювання) з поточною популяцією
+     * і ще раз після оцінювання всієї популяції, до відбору
+     */
+    @Setter
+    private Consumer<List<Individual>> evaluationListener = population -> {
+    };
+
+    /**
+     * Стан RANDOM на початку оцінювання популяції. Поки мережі навчаються паралельно, поточний стан
+     * залежить від чергування потоків, тому знімки посеред оцінювання зберігають саме цей стан.
+     */
+    @Getter
+    private volatile ResumableRandom.State evaluationStartRandom;
 
     public List<Individual> evolve(List<Individual> currentPopulation, List<Image> trainSet, List<Image> validationSet) {
         checkCache(currentPopulation);
+        return resume(currentPopulation, trainSet, validationSet);
+    }
 
+    /**
+     * Продовжує покоління, популяцію якого вже перевірено за кешем (відновлення з checkpoint посеред
+     * оцінювання): оцінюються лише особини без fitness, решта не навчається повторно.
+     */
+    public List<Individual> resume(List<Individual> currentPopulation, List<Image> trainSet, List<Image> validationSet) {
         evaluateFitnessForAll(currentPopulation, trainSet, validationSet);
 
         currentPopulation.sort(comparingDouble(Individual::getFitness));
@@ -56,6 +85,7 @@ public class GeneticAlgorithm {
     }
 
     private void evaluateFitnessForAll(List<Individual> currentPopulation, List<Image> trainSet, List<Image> validationSet) {
+        evaluationStartRandom = RANDOM.getState();
         AtomicInteger processedCount = new AtomicInteger(0);
         IntStream.range(0, currentPopulation.size())
             .parallel()
@@ -65,6 +95,7 @@ public class GeneticAlgorithm {
                     float fitness = evaluateFitness(ind, trainSet, validationSet);
                     ind.setFitness(fitness);
                     CACHE.put(ind.getChromosome().toString(), fitness);
+                    evaluationListener.accept(currentPopulation);
                 }
                 int processed = processedCount.incrementAndGet();
                 String threadName = currentThread().getName();
@@ -72,6 +103,7 @@ public class GeneticAlgorithm {
                 System.out.println("[" + processed + "/" + currentPopulation.size() + "], thread " +
                     (split.length > 1 ? split[split.length - 1] : "0") + ": " + ind);
             });
+        evaluationListener.accept(currentPopulation);
     }
 
     private static void addChildrenOfElite(List<Individual> currentPopulation, List<Individual> nextGeneration) {
@@ -110,7 +142,7 @@ public class GeneticAlgorithm {
     private float evaluateFitness(Individual ind, List<Image> trainSet, List<Image> validationSet) {
         try {
             long start = now().getEpochSecond();
-            NeuralNetwork network = buildNetworkFromChromosome(ind.getChromosome());
+            NeuralNetwork network = buildNetworkFromChromosome(ind.getChromosome(), FITNESS_GEMM_PRECISION);
             float accuracy = epochTrainer.train(network, trainSet, validationSet);
             long trainingTime = now().getEpochSecond() - start;
             printTimeTaken(trainingTime);
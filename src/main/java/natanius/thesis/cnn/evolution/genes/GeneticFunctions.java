@@ -17,6 +17,7 @@ import java.util.ArrayList;
 import java.util.List;
 import lombok.experimental.UtilityClass;
 import natanius.thesis.cnn.evolution.activation.Linear;
+import natanius.thesis.cnn.evolution.kernels.GemmPrecision;
 import natanius.thesis.cnn.evolution.network.NetworkBuilder;
 import natanius.thesis.cnn.evolution.network.NeuralNetwork;
 
@@ -134,7 +135,11 @@ public class GeneticFunctions {
     }
 
     public static NeuralNetwork buildNetworkFromChromosome(Chromosome chromosome) {
-        NetworkBuilder builder = new NetworkBuilder();
+        return buildNetworkFromChromosome(chromosome, GemmPrecision.DOUBLE);
+    }
+
+    public static NeuralNetwork buildNetworkFromChromosome(Chromosome chromosome, GemmPrecision precision) {
+        NetworkBuilder builder = new NetworkBuilder().withGemmPrecision(precision);
 
         for (LayerGene gene : chromosome.getLayerGenes()) {
             switch (gene.getType()) {
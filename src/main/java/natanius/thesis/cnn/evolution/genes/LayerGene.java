@@ -1,10 +1,27 @@
 package natanius.thesis.cnn.evolution.genes;
 
+import static natanius.thesis.cnn.evolution.genes.LayerType.CONVOLUTION;
+import static natanius.thesis.cnn.evolution.genes.LayerType.FULLY_CONNECTED;
+import static natanius.thesis.cnn.evolution.genes.LayerType.MAX_POOL;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import lombok.Getter;
 import natanius.thesis.cnn.evolution.activation.Activation;
+import natanius.thesis.cnn.evolution.activation.LeakyReLU;
+import natanius.thesis.cnn.evolution.activation.Linear;
+import natanius.thesis.cnn.evolution.activation.ReLU;
+import natanius.thesis.cnn.evolution.activation.Sigmoid;
 
 @Getter
 public class LayerGene {
+    // Формати toString(), за якими ген відновлюється з рядка (див. parse)
+    private static final Pattern CONVOLUTION_FORMAT =
+        Pattern.compile("CONVOLUTION \\((\\d+) filters (\\d+)x\\2, stride=(\\d+), (valid|same) padding \\+ (\\w+)\\)");
+    private static final Pattern MAX_POOL_FORMAT = Pattern.compile("MAX_POOL \\((\\d+)x\\1, stride=(\\d+)\\)");
+    private static final Pattern FC_FORMAT = Pattern.compile("FC\\((\\d+),(\\w+)\\)");
+    private static final String FC_OUTPUT = "FC output";
+
     private final LayerType type;
     private final Integer numFilters;
     private final Integer filterSize;
@@ -44,6 +61,42 @@ public class LayerGene {
         this(type, null, null, null, 0, null, null, null, null);
     }
 
+    /**
+     * Відновлює ген з рядка у форматі {@link #toString()}. Padding "same" — це filterSize / 2,
+     * як і при генерації хромосом.
+     */
+    public static LayerGene parse(String text) {
+        Matcher convolution = CONVOLUTION_FORMAT.matcher(text);
+        if (convolution.matches()) {
+            int filterSize = Integer.parseInt(convolution.group(2));
+            int padding = convolution.group(4).equals("same") ? filterSize / 2 : 0;
+            return new LayerGene(CONVOLUTION, Integer.parseInt(convolution.group(1)), filterSize,
+                parseActivation(convolution.group(5)), padding, Integer.parseInt(convolution.group(3)));
+        }
+        Matcher pool = MAX_POOL_FORMAT.matcher(text);
+        if (pool.matches()) {
+            return new LayerGene(MAX_POOL, Integer.parseInt(pool.group(1)), Integer.parseInt(pool.group(2)));
+        }
+        Matcher fc = FC_FORMAT.matcher(text);
+        if (fc.matches()) {
+            return new LayerGene(FULLY_CONNECTED, Integer.parseInt(fc.group(1)), parseActivation(fc.group(2)));
+        }
+        if (text.equals(FC_OUTPUT)) {
+            return new LayerGene(FULLY_CONNECTED);
+        }
+        throw new IllegalArgumentException("Unknown layer gene: " + text);
+    }
+
+    private static Activation parseActivation(String name) {
+        return switch (name) {
+            case "ReLU" -> new ReLU();
+            case "LeakyReLU" -> new LeakyReLU();
+            case "Sigmoid" -> new Sigmoid();
+            case "Linear" -> new Linear();
+            default -> throw new IllegalArgumentException("Unknown activation: " + name);
+        };
+    }
+
     @Override
     public String toString() {
         switch (type) {
@@ -52,7 +105,7 @@ public class LayerGene {
             }
             case FULLY_CONNECTED -> {
                 String act = activation != null ? activation.getClass().getSimpleName() : "Linear";
-                return fcSize != null ? String.format("FC(%d,%s)", fcSize, act) : "FC output";
+                return fcSize != null ? String.format("FC(%d,%s)", fcSize, act) : FC_OUTPUT;
             }
             case CONVOLUTION -> {
                 String paddingType = padding == 0 ? "valid" : "same";
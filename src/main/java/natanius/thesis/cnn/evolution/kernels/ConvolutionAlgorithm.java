@@ -0,0 +1,30 @@
+package natanius.thesis.cnn.evolution.kernels;
+
+/**
+ * Алгоритм обчислення згорткового шару (forward pass та обох градієнтів).
+ */
+public enum ConvolutionAlgorithm {
+    /**
+     * im2col + GEMM, підтримує будь-які фільтри, stride та padding
+     */
+    GEMM,
+    /**
+     * Winograd F(2×2, 3×3) (див. {@link Winograd}): фільтри 3×3, stride 1, padding до 2
+     */
+    WINOGRAD,
+    /**
+     * Добутки спектрів двовимірного FFT (див. {@link Fft}): stride 1
+     */
+    FFT;
+
+    /**
+     * Чи може алгоритм обчислити згортку з такими параметрами
+     */
+    public boolean supports(int filterSize, int stepSize, int padding) {
+        return switch (this) {
+            case GEMM -> true;
+            case WINOGRAD -> filterSize == 3 && stepSize == 1 && padding <= 2;
+            case FFT -> stepSize == 1 && padding < filterSize;
+        };
+    }
+}
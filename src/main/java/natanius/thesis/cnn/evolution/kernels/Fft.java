@@ -0,0 +1,370 @@
+package natanius.thesis.cnn.evolution.kernels;
+
+import static java.lang.ThreadLocal.withInitial;
+import static java.util.Arrays.fill;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Згортка через двовимірне швидке перетворення Фур'є (radix-2, чиста Java) для великих фільтрів зі stride 1.
+ *
+ * <p>Кожна карта входу та кожен фільтр перетворюються один раз на батч у сітку size × size
+ * (size — степінь двійки, не менша за розмір входу + padding, тому циклічна згортка не накладається
+ * на потрібні позиції виходу). Фільтр g[u][v] розміщується в позиції ((u - p) mod size, (v - p) mod size),
+ * після чого згортковий шар (крос-кореляція) та обидва її градієнти — поелементні добутки спектрів:
+ * <pre>
+ *   Ŷ[n][f]      = Σ_c X̂[n][c] · conj(Ĝ[f][c])      (forward pass)
+ *   ∂L/∂X̂[n][c] = Σ_f Δ̂[n][f] · Ĝ[f][c]            (градієнт по входу)
+ *   ∂L/∂Ĝ[f][c] = Σ_n X̂[n][c] · conj(Δ̂[n][f])      (градієнт фільтрів)
+ * </pre>
+ * Спектри дійсних сигналів ермітово-симетричні, тому зберігаються лише стовпці частот 0..size/2
+ * (комплексні числа чергуються: re, im). Обчислення завжди виконуються в double.
+ */
+@UtilityClass
+public class Fft {
+
+    // Робочі сітки, повторно використовувані кожним потоком (ростуть до найбільшого розміру)
+    private static final ThreadLocal<double[][]> SCRATCH = withInitial(() -> new double[3][0]);
+
+    /**
+     * Розмір сітки: найменша степінь двійки, що вміщує вхід разом з padding та фільтр
+     */
+    public static int size(int rows, int cols, int padding, int filterSize) {
+        int extent = Math.max(Math.max(rows, cols) + padding, filterSize);
+        return Integer.highestOneBit(extent - 1) << 1;
+    }
+
+    /**
+     * Кількість чисел (double) у половинному спектрі сітки size × size
+     */
+    public static int spectrumLength(int size) {
+        return size * (size / 2 + 1) * 2;
+    }
+
+    /**
+     * Таблиця коренів exp(-2πik / size) для k < size / 2 (пари cos, sin)
+     */
+    public static double[] twiddles(int size) {
+        double[] twiddles = new double[size];
+        for (int k = 0; k < size / 2; k++) {
+            double angle = -2 * Math.PI * k / size;
+            twiddles[2 * k] = Math.cos(angle);
+            twiddles[2 * k + 1] = Math.sin(angle);
+        }
+        return twiddles;
+    }
+
+    /**
+     * Спектри карт [from, to) по каналах для всіх прикладів: spectra[n][c] = FFT(карта n, c в початку сітки).
+     *
+     * @param sampleStride  зсув між прикладами у вхідному буфері
+     * @param channelStride зсув між каналами у вхідному буфері (рядки карти йдуть підряд)
+     */
+    public static void transformMaps(double[] in, int from, int to, int batchSize, int channels, int rows, int cols,
+                                     int sampleStride, int channelStride, int size, double[] twiddles, double[] spectra) {
+        int spectrumLength = spectrumLength(size);
+        double[] grid = scratch(0, size * size);
+        for (int c = from; c < to; c++) {
+            for (int n = 0; n < batchSize; n++) {
+                fill(grid, 0.0);
+                int base = n * sampleStride + c * channelStride;
+                for (int r = 0; r < rows; r++) {
+                    System.arraycopy(in, base + r * cols, grid, r * size, cols);
+                }
+                forwardReal(grid, size, twiddles, spectra, (n * channels + c) * spectrumLength);
+            }
+        }
+    }
+
+    /**
+     * Спектри фільтрів [from, to): spectra[f][c] = FFT(g[f][c], зсунутий на -padding циклічно).
+     */
+    public static void transformFilters(double[] filters, int from, int to, int channels, int filterSize, int padding,
+                                        int size, double[] twiddles, double[] spectra) {
+        int spectrumLength = spectrumLength(size);
+        double[] grid = scratch(0, size * size);
+        for (int f = from; f < to; f++) {
+            for (int c = 0; c < channels; c++) {
+                fill(grid, 0.0);
+                int src = (f * channels + c) * filterSize * filterSize;
+                for (int u = 0; u < filterSize; u++) {
+                    int row = Math.floorMod(u - padding, size);
+                    for (int v = 0; v < filterSize; v++) {
+                        grid[row * size + Math.floorMod(v - padding, size)] = filters[src + u * filterSize + v];
+                    }
+                }
+                forwardReal(grid, size, twiddles, spectra, (f * channels + c) * spectrumLength);
+            }
+        }
+    }
+
+    /**
+     * Forward pass для фільтрів [from, to): Y[n][f] = IFFT(Σ_c X̂[n][c] · conj(Ĝ[f][c])), у вихід
+     * записуються позиції [0, outRows) × [0, outCols).
+     */
+    public static void correlate(double[] inputSpectra, double[] filterSpectra, int from, int to,
+                                 int batchSize, int channels, int size, double[] twiddles,
+                                 double[] out, int sampleStride, int channelStride, int outRows, int outCols) {
+        int spectrumLength = spectrumLength(size);
+        double[] acc = scratch(1, spectrumLength);
+        double[] grid = scratch(0, size * size);
+        for (int f = from; f < to; f++) {
+            for (int n = 0; n < batchSize; n++) {
+                fill(acc, 0.0);
+                for (int c = 0; c < channels; c++) {
+                    multiplyAccumulate(inputSpectra, (n * channels + c) * spectrumLength,
+                        filterSpectra, (f * channels + c) * spectrumLength, true, acc, spectrumLength);
+                }
+                inverseReal(acc, size, twiddles, grid, outRows, 0);
+                int base = n * sampleStride + f * channelStride;
+                for (int r = 0; r < outRows; r++) {
+                    System.arraycopy(grid, r * size, out, base + r * outCols, outCols);
+                }
+            }
+        }
+    }
+
+    /**
+     * Градієнт по входу для каналів [from, to): ∂L/∂X[n][c] = IFFT(Σ_f Δ̂[n][f] · Ĝ[f][c]),
+     * у вихід записуються позиції [0, rows) × [0, cols).
+     */
+    public static void convolveTransposed(double[] deltaSpectra, double[] filterSpectra, int from, int to,
+                                          int batchSize, int numFilters, int channels, int size, double[] twiddles,
+                                          double[] out, int sampleStride, int channelStride, int rows, int cols) {
+        int spectrumLength = spectrumLength(size);
+        double[] acc = scratch(1, spectrumLength);
+        double[] grid = scratch(0, size * size);
+        for (int c = from; c < to; c++) {
+            for (int n = 0; n < batchSize; n++) {
+                fill(acc, 0.0);
+                for (int f = 0; f < numFilters; f++) {
+                    multiplyAccumulate(deltaSpectra, (n * numFilters + f) * spectrumLength,
+                        filterSpectra, (f * channels + c) * spectrumLength, false, acc, spectrumLength);
+                }
+                inverseReal(acc, size, twiddles, grid, rows, 0);
+                int base = n * sampleStride + c * channelStride;
+                for (int r = 0; r < rows; r++) {
+                    System.arraycopy(grid, r * size, out, base + r * cols, cols);
+                }
+            }
+        }
+    }
+
+    /**
+     * Градієнт фільтрів [from, to): ∂L/∂G[f][c] = IFFT(Σ_n X̂[n][c] · conj(Δ̂[n][f])), з якого беруться
+     * позиції ((u - p) mod size, (v - p) mod size). Значення перезаписуються.
+     */
+    public static void filterGradients(double[] inputSpectra, double[] deltaSpectra, int from, int to,
+                                       int batchSize, int numFilters, int channels, int filterSize, int padding,
+                                       int size, double[] twiddles, double[] filtersGradient) {
+        int spectrumLength = spectrumLength(size);
+        double[] acc = scratch(1, spectrumLength);
+        double[] grid = scratch(0, size * size);
+        for (int f = from; f < to; f++) {
+            for (int c = 0; c < channels; c++) {
+                fill(acc, 0.0);
+                for (int n = 0; n < batchSize; n++) {
+                    multiplyAccumulate(inputSpectra, (n * channels + c) * spectrumLength,
+                        deltaSpectra, (n * numFilters + f) * spectrumLength, true, acc, spectrumLength);
+                }
+                inverseReal(acc, size, twiddles, grid, filterSize - padding, padding);
+                int dst = (f * channels + c) * filterSize * filterSize;
+                for (int u = 0; u < filterSize; u++) {
+                    int row = Math.floorMod(u - padding, size);
+                    for (int v = 0; v < filterSize; v++) {
+                        filtersGradient[dst + u * filterSize + v] = grid[row * size + Math.floorMod(v - padding, size)];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * acc += a · b (або a · conj(b)) для length / 2 комплексних чисел
+     */
+    private static void multiplyAccumulate(double[] a, int aOffset, double[] b, int bOffset, boolean conjugate,
+                                           double[] acc, int length) {
+        double sign = conjugate ? -1.0 : 1.0;
+        for (int i = 0; i < length; i += 2) {
+            double aRe = a[aOffset + i];
+            double aIm = a[aOffset + i + 1];
+            double bRe = b[bOffset + i];
+            double bIm = sign * b[bOffset + i + 1];
+            acc[i] += aRe * bRe - aIm * bIm;
+            acc[i + 1] += aRe * bIm + aIm * bRe;
+        }
+    }
+
+    /**
+     * Половинний спектр дійсної сітки size × size. Пари рядків r, r + 1 перетворюються одним комплексним FFT
+     * (z = x_r + i·x_{r+1}, спектри розділяються за ермітовою симетрією), нульові пари пропускаються;
+     * потім FFT вздовж рядків для стовпців частот 0..size/2.
+     */
+    private static void forwardReal(double[] grid, int size, double[] twiddles, double[] spectrum, int offset) {
+        int rowLength = (size / 2 + 1) * 2;
+        double[] line = scratch(2, size * 2);
+        for (int r = 0; r < size; r += 2) {
+            int first = offset + r * rowLength;
+            int second = first + rowLength;
+            if (isZero(grid, r * size, 2 * size)) {
+                fill(spectrum, first, second + rowLength, 0.0);
+                continue;
+            }
+            for (int j = 0; j < size; j++) {
+                line[2 * j] = grid[r * size + j];
+                line[2 * j + 1] = grid[(r + 1) * size + j];
+            }
+            transform(line, size, twiddles, false);
+            for (int k = 0; k < rowLength; k += 2) {
+                int mirror = k == 0 ? 0 : 2 * size - k;
+                double re = line[k];
+                double im = line[k + 1];
+                double mirrorRe = line[mirror];
+                double mirrorIm = -line[mirror + 1];
+                spectrum[first + k] = 0.5 * (re + mirrorRe);
+                spectrum[first + k + 1] = 0.5 * (im + mirrorIm);
+                spectrum[second + k] = 0.5 * (im - mirrorIm);
+                spectrum[second + k + 1] = -0.5 * (re - mirrorRe);
+            }
+        }
+        transformColumns(spectrum, offset, size, rowLength, twiddles, false);
+    }
+
+    /**
+     * Дійсна сітка з половинного спектра (спектр використовується як робочий буфер і псується).
+     * Обчислюються лише рядки [0, rows) та [size - tailRows, size): після оберненого FFT вздовж рядків
+     * пари рядків відновлюються одним комплексним оберненим FFT (дійсна та уявна частини), нормування на size².
+     */
+    private static void inverseReal(double[] spectrum, int size, double[] twiddles, double[] grid,
+                                    int rows, int tailRows) {
+        int rowLength = (size / 2 + 1) * 2;
+        double[] line = scratch(2, size * 2);
+        double scale = 1.0 / (size * size);
+        transformColumns(spectrum, 0, size, rowLength, twiddles, true);
+        for (int r = 0; r < size; r += 2) {
+            if (r >= rows && r + 1 < size - tailRows) {
+                continue;
+            }
+            int first = r * rowLength;
+            int second = first + rowLength;
+            for (int k = 0; k < 2 * size; k += 2) {
+                // Частоти понад size/2 — спряжені до дзеркальних
+                int src = k < rowLength ? k : 2 * size - k;
+                double sign = k < rowLength ? 1.0 : -1.0;
+                line[k] = spectrum[first + src] - sign * spectrum[second + src + 1];
+                line[k + 1] = sign * spectrum[first + src + 1] + spectrum[second + src];
+            }
+            transform(line, size, twiddles, true);
+            for (int j = 0; j < size; j++) {
+                grid[r * size + j] = line[2 * j] * scale;
+                grid[(r + 1) * size + j] = line[2 * j + 1] * scale;
+            }
+        }
+    }
+
+    /**
+     * FFT вздовж стовпців сітки (між рядками): кожен метелик обробляє цілі рядки довжини rowLength підряд.
+     */
+    private static void transformColumns(double[] data, int offset, int size, int rowLength,
+                                         double[] twiddles, boolean inverse) {
+        for (int i = 1, j = 0; i < size; i++) {
+            j = nextReversed(j, size);
+            if (i < j) {
+                int a = offset + i * rowLength;
+                int b = offset + j * rowLength;
+                for (int k = 0; k < rowLength; k++) {
+                    double t = data[a + k];
+                    data[a + k] = data[b + k];
+                    data[b + k] = t;
+                }
+            }
+        }
+
+        double sign = inverse ? -1.0 : 1.0;
+        for (int length = 2; length <= size; length <<= 1) {
+            int halfLength = length >> 1;
+            int step = size / length;
+            for (int i = 0; i < size; i += length) {
+                for (int k = 0; k < halfLength; k++) {
+                    double wRe = twiddles[2 * k * step];
+                    double wIm = sign * twiddles[2 * k * step + 1];
+                    int a = offset + (i + k) * rowLength;
+                    int b = a + halfLength * rowLength;
+                    for (int j = 0; j < rowLength; j += 2) {
+                        double bRe = data[b + j] * wRe - data[b + j + 1] * wIm;
+                        double bIm = data[b + j] * wIm + data[b + j + 1] * wRe;
+                        data[b + j] = data[a + j] - bRe;
+                        data[b + j + 1] = data[a + j + 1] - bIm;
+                        data[a + j] += bRe;
+                        data[a + j + 1] += bIm;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Ітеративне radix-2 FFT на місці для n комплексних чисел, що йдуть підряд (без нормування для оберненого).
+     */
+    private static void transform(double[] data, int n, double[] twiddles, boolean inverse) {
+        for (int i = 1, j = 0; i < n; i++) {
+            j = nextReversed(j, n);
+            if (i < j) {
+                double re = data[2 * i];
+                double im = data[2 * i + 1];
+                data[2 * i] = data[2 * j];
+                data[2 * i + 1] = data[2 * j + 1];
+                data[2 * j] = re;
+                data[2 * j + 1] = im;
+            }
+        }
+
+        double sign = inverse ? -1.0 : 1.0;
+        for (int length = 2; length <= n; length <<= 1) {
+            int halfLength = length >> 1;
+            int step = n / length;
+            for (int i = 0; i < n; i += length) {
+                for (int k = 0; k < halfLength; k++) {
+                    double wRe = twiddles[2 * k * step];
+                    double wIm = sign * twiddles[2 * k * step + 1];
+                    int a = 2 * (i + k);
+                    int b = a + length;
+                    double bRe = data[b] * wRe - data[b + 1] * wIm;
+                    double bIm = data[b] * wIm + data[b + 1] * wRe;
+                    data[b] = data[a] - bRe;
+                    data[b + 1] = data[a + 1] - bIm;
+                    data[a] += bRe;
+                    data[a + 1] += bIm;
+                }
+            }
+        }
+    }
+
+    /**
+     * Наступний індекс з оберненим порядком бітів (для перестановки перед метеликами)
+     */
+    private static int nextReversed(int j, int n) {
+        int bit = n >> 1;
+        for (; (j & bit) != 0; bit >>= 1) {
+            j ^= bit;
+        }
+        return j ^ bit;
+    }
+
+    private static boolean isZero(double[] data, int from, int length) {
+        for (int i = from; i < from + length; i++) {
+            if (data[i] != 0.0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double[] scratch(int index, int length) {
+        double[][] buffers = SCRATCH.get();
+        if (buffers[index].length < length) {
+            buffers[index] = new double[length];
+        }
+        return buffers[index];
+    }
+}
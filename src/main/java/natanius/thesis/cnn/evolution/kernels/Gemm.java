@@ -0,0 +1,322 @@
+package natanius.thesis.cnn.evolution.kernels;
+
+import static java.lang.ThreadLocal.withInitial;
+import static natanius.thesis.cnn.evolution.kernels.Kernels.BACKEND;
+
+import java.util.Arrays;
+import lombok.experimental.UtilityClass;
+
+/**
+ * Блочне множення матриць (GEMM) для щільних row-major буферів.
+ *
+ * <p>Матриці задаються масивом, зсувом першого елемента та leading dimension (кроком між рядками),
+ * тому можна множити підматриці великих буферів без копіювання.
+ *
+ * <p><b>Структура (за схемою GotoBLAS):</b>
+ * <ul>
+ *   <li>Cache blocking: B розбивається на панелі KC×NC, A — на блоки MC×KC. Кожен блок
+ *       пакується у неперервний буфер, щоб мікроядро читало пам'ять послідовно</li>
+ *   <li>Register blocking: мікроядро обчислює блок C розміром MR×NR у локальних змінних
+ *       і записує його в пам'ять один раз на KC кроків. Саме мікроядро
+ *       надає {@link KernelBackend} (скалярне або SIMD)</li>
+ * </ul>
+ *
+ * <p>З {@link GemmPrecision#FLOAT} блоки пакуються у float32, а мікроядро обчислює блок MR_FLOAT×NR_FLOAT
+ * у float і додає його до C (double), тому похибка накопичується лише в межах KC доданків.
+ *
+ * <p>Буфери пакування належать потоку, тому паралельне навчання кількох мереж безпечне.
+ */
+@UtilityClass
+public class Gemm {
+
+    private static final int MR = 4;
+    private static final int NR = 4;
+    private static final int MR_FLOAT = 8;
+    private static final int NR_FLOAT = 8;
+    private static final int MC = 64;
+    private static final int KC = 256;
+    private static final int NC = 512;
+
+    private static final ThreadLocal<double[]> PACKED_A = withInitial(() -> new double[MC * KC]);
+    private static final ThreadLocal<double[]> PACKED_B = withInitial(() -> new double[KC * NC]);
+    private static final ThreadLocal<double[]> EDGE_BLOCK = withInitial(() -> new double[MR * NR]);
+    private static final ThreadLocal<float[]> PACKED_A_FLOAT = withInitial(() -> new float[MC * KC]);
+    private static final ThreadLocal<float[]> PACKED_B_FLOAT = withInitial(() -> new float[KC * NC]);
+    private static final ThreadLocal<double[]> EDGE_BLOCK_FLOAT = withInitial(() -> new double[MR_FLOAT * NR_FLOAT]);
+
+    /**
+     * C[M][N] += A[M][K] · B[K][N]
+     */
+    public static void multiply(GemmPrecision precision, int m, int n, int k,
+                                double[] a, int aOffset, int lda,
+                                double[] b, int bOffset, int ldb,
+                                double[] c, int cOffset, int ldc) {
+        gemm(precision, false, false, m, n, k, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+    }
+
+    /**
+     * C[M][N] += Aᵀ · B, де A зберігається як [K][M], B — як [K][N]
+     */
+    public static void multiplyTransposedA(GemmPrecision precision, int m, int n, int k,
+                                           double[] a, int aOffset, int lda,
+                                           double[] b, int bOffset, int ldb,
+                                           double[] c, int cOffset, int ldc) {
+        gemm(precision, true, false, m, n, k, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+    }
+
+    /**
+     * C[M][N] += A · Bᵀ, де A зберігається як [M][K], B — як [N][K]
+     */
+    public static void multiplyTransposedB(GemmPrecision precision, int m, int n, int k,
+                                           double[] a, int aOffset, int lda,
+                                           double[] b, int bOffset, int ldb,
+                                           double[] c, int cOffset, int ldc) {
+        gemm(precision, false, true, m, n, k, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+    }
+
+    private static void gemm(GemmPrecision precision, boolean transA, boolean transB, int m, int n, int k,
+                             double[] a, int aOffset, int lda,
+                             double[] b, int bOffset, int ldb,
+                             double[] c, int cOffset, int ldc) {
+        if (m == 1 && !transA) {
+            // Точність не впливає (див. vectorTimesMatrix)
+            vectorTimesMatrix(transB, n, k, a, aOffset, b, bOffset, ldb, c, cOffset);
+        } else if (precision == GemmPrecision.FLOAT) {
+            gemmFloat(transA, transB, m, n, k, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+        } else {
+            gemmDouble(transA, transB, m, n, k, a, aOffset, lda, b, bOffset, ldb, c, cOffset, ldc);
+        }
+    }
+
+    private static void gemmDouble(boolean transA, boolean transB, int m, int n, int k,
+                                   double[] a, int aOffset, int lda,
+                                   double[] b, int bOffset, int ldb,
+                                   double[] c, int cOffset, int ldc) {
+        double[] packedA = PACKED_A.get();
+        double[] packedB = PACKED_B.get();
+
+        for (int jc = 0; jc < n; jc += NC) {
+            int nc = Math.min(NC, n - jc);
+            for (int pc = 0; pc < k; pc += KC) {
+                int kc = Math.min(KC, k - pc);
+                if (transB) {
+                    packB(b, bOffset + jc * ldb + pc, 1, ldb, kc, nc, packedB);
+                } else {
+                    packB(b, bOffset + pc * ldb + jc, ldb, 1, kc, nc, packedB);
+                }
+
+                for (int ic = 0; ic < m; ic += MC) {
+                    int mc = Math.min(MC, m - ic);
+                    if (transA) {
+                        packA(a, aOffset + pc * lda + ic, 1, lda, mc, kc, packedA);
+                    } else {
+                        packA(a, aOffset + ic * lda + pc, lda, 1, mc, kc, packedA);
+                    }
+
+                    for (int jr = 0; jr < nc; jr += NR) {
+                        int nr = Math.min(NR, nc - jr);
+                        for (int ir = 0; ir < mc; ir += MR) {
+                            int mr = Math.min(MR, mc - ir);
+                            kernel(kc, packedA, ir * kc, packedB, jr * kc,
+                                c, cOffset + (ic + ir) * ldc + jc + jr, ldc, mr, nr);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Той самий обхід блоків, що й у {@link #gemmDouble}, але панелі пакуються у float32
+     * зі смугами B по NR_FLOAT стовпців.
+     */
+    private static void gemmFloat(boolean transA, boolean transB, int m, int n, int k,
+                                  double[] a, int aOffset, int lda,
+                                  double[] b, int bOffset, int ldb,
+                                  double[] c, int cOffset, int ldc) {
+        float[] packedA = PACKED_A_FLOAT.get();
+        float[] packedB = PACKED_B_FLOAT.get();
+
+        for (int jc = 0; jc < n; jc += NC) {
+            int nc = Math.min(NC, n - jc);
+            for (int pc = 0; pc < k; pc += KC) {
+                int kc = Math.min(KC, k - pc);
+                if (transB) {
+                    packB(b, bOffset + jc * ldb + pc, 1, ldb, kc, nc, packedB);
+                } else {
+                    packB(b, bOffset + pc * ldb + jc, ldb, 1, kc, nc, packedB);
+                }
+
+                for (int ic = 0; ic < m; ic += MC) {
+                    int mc = Math.min(MC, m - ic);
+                    if (transA) {
+                        packA(a, aOffset + pc * lda + ic, 1, lda, mc, kc, packedA);
+                    } else {
+                        packA(a, aOffset + ic * lda + pc, lda, 1, mc, kc, packedA);
+                    }
+
+                    for (int jr = 0; jr < nc; jr += NR_FLOAT) {
+                        int nr = Math.min(NR_FLOAT, nc - jr);
+                        for (int ir = 0; ir < mc; ir += MR_FLOAT) {
+                            int mr = Math.min(MR_FLOAT, mc - ir);
+                            kernel(kc, packedA, ir * kc, packedB, jr * kc,
+                                c, cOffset + (ic + ir) * ldc + jc + jr, ldc, mr, nr);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Пакує блок A[mc][kc] у панелі по MR рядків: packed[panel][p][r] = A[panel × MR + r][p].
+     * Елемент A[i][p] знаходиться за адресою offset + i × rowStride + p × colStride,
+     * що дозволяє пакувати як A, так і Aᵀ. Неповна остання панель доповнюється нулями.
+     */
+    private static void packA(double[] a, int offset, int rowStride, int colStride, int mc, int kc, double[] packed) {
+        int dst = 0;
+        for (int i = 0; i < mc; i += MR) {
+            int rows = Math.min(MR, mc - i);
+            for (int p = 0; p < kc; p++) {
+                int src = offset + i * rowStride + p * colStride;
+                for (int r = 0; r < rows; r++) {
+                    packed[dst + r] = a[src + r * rowStride];
+                }
+                for (int r = rows; r < MR; r++) {
+                    packed[dst + r] = 0.0;
+                }
+                dst += MR;
+            }
+        }
+    }
+
+    /**
+     * Пакує панель B[kc][nc] у смуги по NR стовпців: packed[strip][p][j] = B[p][strip × NR + j].
+     * Елемент B[p][j] знаходиться за адресою offset + p × rowStride + j × colStride,
+     * що дозволяє пакувати як B, так і Bᵀ. Неповна остання смуга доповнюється нулями.
+     */
+    private static void packB(double[] b, int offset, int rowStride, int colStride, int kc, int nc, double[] packed) {
+        int dst = 0;
+        for (int j = 0; j < nc; j += NR) {
+            int cols = Math.min(NR, nc - j);
+            for (int p = 0; p < kc; p++) {
+                int src = offset + p * rowStride + j * colStride;
+                for (int q = 0; q < cols; q++) {
+                    packed[dst + q] = b[src + q * colStride];
+                }
+                for (int q = cols; q < NR; q++) {
+                    packed[dst + q] = 0.0;
+                }
+                dst += NR;
+            }
+        }
+    }
+
+    /**
+     * {@link #packA(double[], int, int, int, int, int, double[])} з перетворенням у float32
+     * та панелями по MR_FLOAT рядків.
+     */
+    private static void packA(double[] a, int offset, int rowStride, int colStride, int mc, int kc, float[] packed) {
+        int dst = 0;
+        for (int i = 0; i < mc; i += MR_FLOAT) {
+            int rows = Math.min(MR_FLOAT, mc - i);
+            for (int p = 0; p < kc; p++) {
+                int src = offset + i * rowStride + p * colStride;
+                for (int r = 0; r < rows; r++) {
+                    packed[dst + r] = (float) a[src + r * rowStride];
+                }
+                for (int r = rows; r < MR_FLOAT; r++) {
+                    packed[dst + r] = 0.0f;
+                }
+                dst += MR_FLOAT;
+            }
+        }
+    }
+
+    /**
+     * {@link #packB(double[], int, int, int, int, int, double[])} з перетворенням у float32
+     * та смугами по NR_FLOAT стовпців.
+     */
+    private static void packB(double[] b, int offset, int rowStride, int colStride, int kc, int nc, float[] packed) {
+        int dst = 0;
+        for (int j = 0; j < nc; j += NR_FLOAT) {
+            int cols = Math.min(NR_FLOAT, nc - j);
+            for (int p = 0; p < kc; p++) {
+                int src = offset + p * rowStride + j * colStride;
+                for (int q = 0; q < cols; q++) {
+                    packed[dst + q] = (float) b[src + q * colStride];
+                }
+                for (int q = cols; q < NR_FLOAT; q++) {
+                    packed[dst + q] = 0.0f;
+                }
+                dst += NR_FLOAT;
+            }
+        }
+    }
+
+    /**
+     * Мікроядро double для блоку C[mr][nr]. Повні блоки 4×4 обчислюються backend напряму в C,
+     * неповні (краї матриці) — у тимчасовий блок, з якого копіюється лише потрібна частина.
+     */
+    private static void kernel(int kc, double[] a, int aIndex, double[] b, int bIndex,
+                               double[] c, int cIndex, int ldc, int mr, int nr) {
+        if (mr == MR && nr == NR) {
+            BACKEND.gemmKernel(kc, a, aIndex, b, bIndex, c, cIndex, ldc);
+            return;
+        }
+
+        double[] block = EDGE_BLOCK.get();
+        Arrays.fill(block, 0.0);
+        BACKEND.gemmKernel(kc, a, aIndex, b, bIndex, block, 0, NR);
+        for (int r = 0; r < mr; r++) {
+            for (int q = 0; q < nr; q++) {
+                c[cIndex + r * ldc + q] += block[r * NR + q];
+            }
+        }
+    }
+
+    /**
+     * Мікроядро float32 для блоку C[mr][nr] (повний блок — MR_FLOAT×NR_FLOAT).
+     */
+    private static void kernel(int kc, float[] a, int aIndex, float[] b, int bIndex,
+                               double[] c, int cIndex, int ldc, int mr, int nr) {
+        if (mr == MR_FLOAT && nr == NR_FLOAT) {
+            BACKEND.gemmKernelFloat(kc, a, aIndex, b, bIndex, c, cIndex, ldc);
+            return;
+        }
+
+        double[] block = EDGE_BLOCK_FLOAT.get();
+        Arrays.fill(block, 0.0);
+        BACKEND.gemmKernelFloat(kc, a, aIndex, b, bIndex, block, 0, NR_FLOAT);
+        for (int r = 0; r < mr; r++) {
+            for (int q = 0; q < nr; q++) {
+                c[cIndex + r * ldc + q] += block[r * NR_FLOAT + q];
+            }
+        }
+    }
+
+    /**
+     * C[1][N] += a[1][K] · B — множення вектора на матрицю (наприклад, один приклад через FC шар).
+     * Пакування тут не окупається, тому використовуються dot та axpy по рядках B.
+     * Нульові елементи a пропускаються, що ефективно після ReLU та pooling.
+     * Виконується в double і для {@link GemmPrecision#FLOAT}: без пакування кожен елемент B читається
+     * з double буфера лише один раз, тож перетворення у float нічого не заощадило б.
+     */
+    private static void vectorTimesMatrix(boolean transB, int n, int k,
+                                          double[] a, int aOffset,
+                                          double[] b, int bOffset, int ldb,
+                                          double[] c, int cOffset) {
+        if (transB) {
+            for (int j = 0; j < n; j++) {
+                c[cOffset + j] += BACKEND.dot(a, aOffset, b, bOffset + j * ldb, k);
+            }
+        } else {
+            for (int p = 0; p < k; p++) {
+                double ap = a[aOffset + p];
+                if (ap != 0.0) {
+                    BACKEND.axpy(ap, b, bOffset + p * ldb, c, cOffset, n);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package natanius.thesis.cnn.evolution.kernels;
+
+/**
+ * Точність операндів у множеннях матриць GEMM (згортки через im2col та повнозв'язні шари).
+ *
+ * <p>Це не точність мережі: ваги, активації, градієнти, перетворення Winograd/FFT і функції активації
+ * завжди обчислюються та зберігаються в double. Множення вектора на матрицю (батч з одного прикладу,
+ * див. {@link Gemm}) також виконується в double незалежно від точності. Зберігання параметрів,
+ * активацій і градієнтів у float32 не реалізовано.
+ */
+public enum GemmPrecision {
+    /**
+     * Усі добутки та суми у double
+     */
+    DOUBLE,
+    /**
+     * Операнди GEMM пакуються у float32, добутки та часткові суми блоку (до KC доданків) обчислюються
+     * у float, а між блоками результат накопичується в double. Вдвічі менший обсяг пакованих панелей
+     * у кеші та вдвічі ширші SIMD вектори; обсяг даних, що читаються з пам'яті поза GEMM, не зменшується.
+     */
+    FLOAT
+}
@@ -0,0 +1,159 @@
+package natanius.thesis.cnn.evolution.kernels;
+
+import static java.lang.Math.ceilDiv;
+import static java.util.Arrays.fill;
+
+import lombok.experimental.UtilityClass;
+import natanius.thesis.cnn.evolution.data.Tensor;
+
+/**
+ * Перетворення im2col: розгортає всі вікна згортки батча в одну матрицю,
+ * щоб згортку всіма фільтрами можна було виконати одним множенням матриць.
+ *
+ * <p><b>Розкладка матриці стовпців</b> [K][N × P]:
+ * <pre>
+ * K = inChannels × filterSize × filterSize   (рядок k = (c × filterSize + x) × filterSize + y)
+ * P = outRows × outCols                       (стовпець n × P + i × outCols + j)
+ * columns[k][n × P + i × outCols + j] = Input[n][c][i × stride + x - padding][j × stride + y - padding]
+ * </pre>
+ * Позиції, що потрапляють у padding, дорівнюють 0, тому вхід не потрібно копіювати з обрамленням.
+ */
+@UtilityClass
+public class Im2col {
+
+    public static void im2col(Tensor input, int filterSize, int stride, int padding,
+                              int outRows, int outCols, double[] columns) {
+        double[] in = input.getData();
+        int batchSize = input.getBatchSize();
+        int channels = input.getChannels();
+        int inRows = input.getRows();
+        int inCols = input.getCols();
+        int pixels = outRows * outCols;
+        int width = batchSize * pixels;
+
+        for (int c = 0; c < channels; c++) {
+            for (int x = 0; x < filterSize; x++) {
+                for (int y = 0; y < filterSize; y++) {
+                    int rowBase = ((c * filterSize + x) * filterSize + y) * width;
+                    // Діапазон j, для якого стовпець входу j × stride + y - padding лежить у межах [0, inCols)
+                    int jStart = Math.max(0, ceilDiv(padding - y, stride));
+                    int jEnd = Math.min(outCols, ceilDiv(inCols + padding - y, stride));
+
+                    for (int n = 0; n < batchSize; n++) {
+                        int channelBase = input.offset(n, c, 0, 0);
+                        int dst = rowBase + n * pixels;
+
+                        for (int i = 0; i < outRows; i++, dst += outCols) {
+                            int row = i * stride + x - padding;
+                            if (row < 0 || row >= inRows || jStart >= jEnd) {
+                                fill(columns, dst, dst + outCols, 0.0);
+                                continue;
+                            }
+                            fill(columns, dst, dst + jStart, 0.0);
+                            fill(columns, dst + jEnd, dst + outCols, 0.0);
+
+                            int src = channelBase + row * inCols + jStart * stride + y - padding;
+                            if (stride == 1) {
+                                System.arraycopy(in, src, columns, dst + jStart, jEnd - jStart);
+                            } else {
+                                for (int j = jStart; j < jEnd; j++, src += stride) {
+                                    columns[dst + j] = in[src];
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * im2col для квантизованого входу int8 [batchSize][channels][inRows][inCols] (та сама розкладка стовпців;
+     * padding дорівнює 0, бо нуль при симетричній квантизації точний).
+     */
+    public static void im2col(byte[] in, int batchSize, int channels, int inRows, int inCols,
+                              int filterSize, int stride, int padding, int outRows, int outCols, byte[] columns) {
+        int pixels = outRows * outCols;
+        int width = batchSize * pixels;
+        int channelSize = inRows * inCols;
+
+        for (int c = 0; c < channels; c++) {
+            for (int x = 0; x < filterSize; x++) {
+                for (int y = 0; y < filterSize; y++) {
+                    int rowBase = ((c * filterSize + x) * filterSize + y) * width;
+                    int jStart = Math.max(0, ceilDiv(padding - y, stride));
+                    int jEnd = Math.min(outCols, ceilDiv(inCols + padding - y, stride));
+
+                    for (int n = 0; n < batchSize; n++) {
+                        int channelBase = (n * channels + c) * channelSize;
+                        int dst = rowBase + n * pixels;
+
+                        for (int i = 0; i < outRows; i++, dst += outCols) {
+                            int row = i * stride + x - padding;
+                            if (row < 0 || row >= inRows || jStart >= jEnd) {
+                                fill(columns, dst, dst + outCols, (byte) 0);
+                                continue;
+                            }
+                            fill(columns, dst, dst + jStart, (byte) 0);
+                            fill(columns, dst + jEnd, dst + outCols, (byte) 0);
+
+                            int src = channelBase + row * inCols + jStart * stride + y - padding;
+                            if (stride == 1) {
+                                System.arraycopy(in, src, columns, dst + jStart, jEnd - jStart);
+                            } else {
+                                for (int j = jStart; j < jEnd; j++, src += stride) {
+                                    columns[dst + j] = in[src];
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Обернене перетворення (col2im): додає кожен елемент матриці стовпців [K][N × P] до тієї позиції
+     * входу, з якої він був узятий під час im2col. Stride та padding враховуються індексами напряму,
+     * тому не потрібні ні розрідження градієнта нулями, ні обрізання результату.
+     * <pre>
+     * Output[n][c][i × stride + x - padding][j × stride + y - padding] += columns[k][n × P + i × outCols + j]
+     * </pre>
+     */
+    public static void col2im(double[] columns, int filterSize, int stride, int padding,
+                              int outRows, int outCols, Tensor output) {
+        double[] out = output.getData();
+        int batchSize = output.getBatchSize();
+        int channels = output.getChannels();
+        int inRows = output.getRows();
+        int inCols = output.getCols();
+        int pixels = outRows * outCols;
+        int width = batchSize * pixels;
+
+        for (int c = 0; c < channels; c++) {
+            for (int x = 0; x < filterSize; x++) {
+                for (int y = 0; y < filterSize; y++) {
+                    int rowBase = ((c * filterSize + x) * filterSize + y) * width;
+                    int jStart = Math.max(0, ceilDiv(padding - y, stride));
+                    int jEnd = Math.min(outCols, ceilDiv(inCols + padding - y, stride));
+                    if (jStart >= jEnd) continue;
+
+                    for (int n = 0; n < batchSize; n++) {
+                        int channelBase = output.offset(n, c, 0, 0);
+                        int src = rowBase + n * pixels;
+
+                        for (int i = 0; i < outRows; i++, src += outCols) {
+                            int row = i * stride + x - padding;
+                            if (row < 0 || row >= inRows) continue;
+
+                            int dst = channelBase + row * inCols + jStart * stride + y - padding;
+                            for (int j = jStart; j < jEnd; j++, dst += stride) {
+                                out[dst] += columns[src + j];
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
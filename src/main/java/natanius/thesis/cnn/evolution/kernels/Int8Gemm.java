@@ -0,0 +1,46 @@
+package natanius.thesis.cnn.evolution.kernels;
+
+import static java.util.Arrays.fill;
+import static natanius.thesis.cnn.evolution.kernels.Kernels.BACKEND;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Цілочисельне множення матриць для квантизованого inference: C[M][N] = A[M][K] · B[K][N],
+ * де A та B — int8, а C — точні суми в int32 (|a × b| ≤ 127², тож переповнення немає до K ≈ 133000).
+ *
+ * <p>Кожен рядок C накопичується як сума рядків B з коефіцієнтами a[i][p] (див. {@link KernelBackend#axpyInt8}).
+ * Стовпці обробляються смугами по NC, щоб рядок C та відповідні смуги рядків B залишалися в кеші
+ * протягом усіх K кроків. Нульові ваги пропускаються.
+ *
+ * <p>Виграш у швидкості дає лише векторний backend (axpy на найширших int-векторах).
+ * На скалярному backend int8 GEMM повільніша за double: цілочисельне множення в скалярній Java
+ * не швидше за double, і навіть блочне int-ядро 4×4 з пакуванням не виграє у {@link Gemm}.
+ */
+@UtilityClass
+public class Int8Gemm {
+
+    private static final int NC = 1024;
+
+    /**
+     * C[M][N] = A[M][K] · B[K][N] (матриці задаються як у {@link Gemm}: масив, зсув, leading dimension)
+     */
+    public static void multiply(int m, int n, int k,
+                                byte[] a, int aOffset, int lda,
+                                byte[] b, int bOffset, int ldb,
+                                int[] c, int cOffset, int ldc) {
+        for (int jc = 0; jc < n; jc += NC) {
+            int nc = Math.min(NC, n - jc);
+            for (int i = 0; i < m; i++) {
+                int cRow = cOffset + i * ldc + jc;
+                fill(c, cRow, cRow + nc, 0);
+                for (int p = 0; p < k; p++) {
+                    int weight = a[aOffset + i * lda + p];
+                    if (weight != 0) {
+                        BACKEND.axpyInt8(weight, b, bOffset + p * ldb + jc, c, cRow, nc);
+                    }
+                }
+            }
+        }
+    }
+}
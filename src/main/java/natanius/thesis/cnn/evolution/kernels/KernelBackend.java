@@ -0,0 +1,53 @@
+package natanius.thesis.cnn.evolution.kernels;
+
+import natanius.thesis.cnn.evolution.activation.Activation;
+
+/**
+ * Найгарячіші внутрішні цикли мережі, винесені за один інтерфейс, щоб їх можна було
+ * виконувати скалярно або SIMD-інструкціями.
+ *
+ * <p>Реалізація обирається один раз під час запуску (див. {@link Kernels}), тому виклики
+ * залишаються мономорфними і JIT вбудовує їх у місце виклику.
+ */
+public interface KernelBackend {
+
+    String getName();
+
+    /**
+     * Мікроядро GEMM: C[4][4] += Apanel[4][kc] · Bstrip[kc][4] для запакованих панелей
+     * (розкладка пакування описана в {@link Gemm}).
+     */
+    void gemmKernel(int kc, double[] a, int aIndex, double[] b, int bIndex, double[] c, int cIndex, int ldc);
+
+    /**
+     * Мікроядро GEMM у float32: C[8][8] += Apanel[8][kc] · Bstrip[kc][8]. Блок накопичується у float
+     * і додається до C (double) один раз.
+     */
+    void gemmKernelFloat(int kc, float[] a, int aIndex, float[] b, int bIndex, double[] c, int cIndex, int ldc);
+
+    /**
+     * Σ a[aOffset + i] × b[bOffset + i], i ∈ [0, length)
+     */
+    double dot(double[] a, int aOffset, double[] b, int bOffset, int length);
+
+    /**
+     * y[yOffset + i] += alpha × x[xOffset + i], i ∈ [0, length)
+     */
+    void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length);
+
+    /**
+     * y[yOffset + i] += alpha × x[xOffset + i], i ∈ [0, length) у цілих числах:
+     * добутки int8 × int8 накопичуються в int32 (для квантизованого inference)
+     */
+    void axpyInt8(int alpha, byte[] x, int xOffset, int[] y, int yOffset, int length);
+
+    /**
+     * Максимум серед a[offset .. offset + length), length > 0
+     */
+    double max(double[] a, int offset, int length);
+
+    /**
+     * a[offset + i] = f(z[offset + i]), i ∈ [0, length). Масиви z і a можуть збігатися.
+     */
+    void activate(Activation activation, double[] z, double[] a, int offset, int length);
+}
@@ -0,0 +1,33 @@
+package natanius.thesis.cnn.evolution.kernels;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Вибір backend для ядер під час запуску.
+ *
+ * <p>Векторний backend використовується, якщо JVM запущена з
+ * {@code --add-modules jdk.incubator.vector} і процесор має щонайменше 256-бітні SIMD регістри.
+ * Інакше, або з {@code -Dcnn.kernels=scalar}, використовується скалярний backend.
+ * Клас векторного backend завантажується через reflection, тому без модуля він не потрібен навіть для завантаження.
+ */
+@UtilityClass
+public class Kernels {
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String VECTOR_BACKEND = "natanius.thesis.cnn.evolution.kernels.VectorKernelBackend";
+
+    public static final KernelBackend BACKEND = selectBackend();
+
+    private static KernelBackend selectBackend() {
+        String requested = System.getProperty("cnn.kernels", "auto");
+        if (!"scalar".equals(requested) && ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+            try {
+                return (KernelBackend) Class.forName(VECTOR_BACKEND).getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                Throwable reason = e.getCause() != null ? e.getCause() : e;
+                System.err.println("Vector kernels unavailable, using scalar: " + reason);
+            }
+        }
+        return new ScalarKernelBackend();
+    }
+}
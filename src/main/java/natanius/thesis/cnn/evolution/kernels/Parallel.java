@@ -0,0 +1,62 @@
+package natanius.thesis.cnn.evolution.kernels;
+
+import static java.lang.Math.ceilDiv;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.IntStream;
+import lombok.experimental.UtilityClass;
+
+/**
+ * Обмежений пул потоків для паралельних обчислень усередині одного шару
+ * (наприклад, зрізів фільтрів згортки).
+ *
+ * <p>Кількість потоків дорівнює кількості ядер; її можна задати через {@code -Dcnn.threads=N}.
+ * Якщо виклик уже виконується в ForkJoinPool (паралельні стріми генетичного алгоритму,
+ * data parallelism батча), робота виконується в поточному потоці: ядра вже зайняті
+ * зовнішнім паралелізмом, і вкладений лише збільшив би кількість потоків.
+ */
+@UtilityClass
+public class Parallel {
+
+    public static final int THREADS = Integer.getInteger("cnn.threads", Runtime.getRuntime().availableProcessors());
+    /**
+     * Мінімальна кількість множень-додавань, для якої варто ділити роботу між потоками
+     */
+    private static final long MIN_WORK = 1L << 20;
+    private static final ForkJoinPool POOL = new ForkJoinPool(Math.max(1, THREADS));
+
+    /**
+     * Обробка діапазону одиниць роботи [from, to)
+     */
+    @FunctionalInterface
+    public interface RangeTask {
+        void run(int from, int to);
+    }
+
+    /**
+     * Кількість потоків, між якими forEachSlice ділить роботу, викликаний з поточного потоку:
+     * 1 усередині ForkJoinPool, інакше THREADS
+     */
+    public static int effectiveThreads() {
+        return ForkJoinTask.inForkJoinPool() ? 1 : THREADS;
+    }
+
+    /**
+     * Ділить units незалежних одиниць роботи на неперетинні діапазони, кратні align (крім останнього),
+     * і обробляє їх паралельно. Для малого обсягу роботи (work множень-додавань) або всередині
+     * ForkJoinPool весь діапазон обробляється одним викликом у поточному потоці.
+     */
+    public static void forEachSlice(int units, int align, long work, RangeTask task) {
+        int slices = Math.min(effectiveThreads(), ceilDiv(units, align));
+        if (slices <= 1 || work < MIN_WORK) {
+            task.run(0, units);
+            return;
+        }
+
+        int size = align * ceilDiv(ceilDiv(units, slices), align);
+        POOL.submit(() -> IntStream.range(0, ceilDiv(units, size)).parallel()
+                .forEach(s -> task.run(s * size, Math.min(units, (s + 1) * size))))
+            .join();
+    }
+}
@@ -0,0 +1,184 @@
+package natanius.thesis.cnn.evolution.kernels;
+
+import natanius.thesis.cnn.evolution.activation.Activation;
+
+/**
+ * Скалярна реалізація ядер. Працює на будь-якій JVM і використовується, якщо модуль
+ * jdk.incubator.vector недоступний.
+ */
+public class ScalarKernelBackend implements KernelBackend {
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+
+    /**
+     * Акумулятори блоку 4×4 тримаються в локальних змінних (регістрах) і записуються в C один раз.
+     */
+    @Override
+    public void gemmKernel(int kc, double[] a, int aIndex, double[] b, int bIndex, double[] c, int cIndex, int ldc) {
+        double c00 = 0, c01 = 0, c02 = 0, c03 = 0;
+        double c10 = 0, c11 = 0, c12 = 0, c13 = 0;
+        double c20 = 0, c21 = 0, c22 = 0, c23 = 0;
+        double c30 = 0, c31 = 0, c32 = 0, c33 = 0;
+
+        for (int p = 0; p < kc; p++, aIndex += 4, bIndex += 4) {
+            double b0 = b[bIndex];
+            double b1 = b[bIndex + 1];
+            double b2 = b[bIndex + 2];
+            double b3 = b[bIndex + 3];
+
+            double a0 = a[aIndex];
+            c00 += a0 * b0;
+            c01 += a0 * b1;
+            c02 += a0 * b2;
+            c03 += a0 * b3;
+
+            double a1 = a[aIndex + 1];
+            c10 += a1 * b0;
+            c11 += a1 * b1;
+            c12 += a1 * b2;
+            c13 += a1 * b3;
+
+            double a2 = a[aIndex + 2];
+            c20 += a2 * b0;
+            c21 += a2 * b1;
+            c22 += a2 * b2;
+            c23 += a2 * b3;
+
+            double a3 = a[aIndex + 3];
+            c30 += a3 * b0;
+            c31 += a3 * b1;
+            c32 += a3 * b2;
+            c33 += a3 * b3;
+        }
+
+        c[cIndex] += c00;
+        c[cIndex + 1] += c01;
+        c[cIndex + 2] += c02;
+        c[cIndex + 3] += c03;
+        cIndex += ldc;
+        c[cIndex] += c10;
+        c[cIndex + 1] += c11;
+        c[cIndex + 2] += c12;
+        c[cIndex + 3] += c13;
+        cIndex += ldc;
+        c[cIndex] += c20;
+        c[cIndex + 1] += c21;
+        c[cIndex + 2] += c22;
+        c[cIndex + 3] += c23;
+        cIndex += ldc;
+        c[cIndex] += c30;
+        c[cIndex + 1] += c31;
+        c[cIndex + 2] += c32;
+        c[cIndex + 3] += c33;
+    }
+
+    /**
+     * Блок 8×8 обчислюється чотирма четвертинами 4×4, щоб акумулятори поміщалися в регістри.
+     */
+    @Override
+    public void gemmKernelFloat(int kc, float[] a, int aIndex, float[] b, int bIndex, double[] c, int cIndex, int ldc) {
+        gemmKernelFloatQuarter(kc, a, aIndex, b, bIndex, c, cIndex, ldc);
+        gemmKernelFloatQuarter(kc, a, aIndex, b, bIndex + 4, c, cIndex + 4, ldc);
+        gemmKernelFloatQuarter(kc, a, aIndex + 4, b, bIndex, c, cIndex + 4 * ldc, ldc);
+        gemmKernelFloatQuarter(kc, a, aIndex + 4, b, bIndex + 4, c, cIndex + 4 * ldc + 4, ldc);
+    }
+
+    private static void gemmKernelFloatQuarter(int kc, float[] a, int aIndex, float[] b, int bIndex,
+                                            double[] c, int cIndex, int ldc) {
+        float c00 = 0, c01 = 0, c02 = 0, c03 = 0;
+        float c10 = 0, c11 = 0, c12 = 0, c13 = 0;
+        float c20 = 0, c21 = 0, c22 = 0, c23 = 0;
+        float c30 = 0, c31 = 0, c32 = 0, c33 = 0;
+
+        for (int p = 0; p < kc; p++, aIndex += 8, bIndex += 8) {
+            float b0 = b[bIndex];
+            float b1 = b[bIndex + 1];
+            float b2 = b[bIndex + 2];
+            float b3 = b[bIndex + 3];
+
+            float a0 = a[aIndex];
+            c00 += a0 * b0;
+            c01 += a0 * b1;
+            c02 += a0 * b2;
+            c03 += a0 * b3;
+
+            float a1 = a[aIndex + 1];
+            c10 += a1 * b0;
+            c11 += a1 * b1;
+            c12 += a1 * b2;
+            c13 += a1 * b3;
+
+            float a2 = a[aIndex + 2];
+            c20 += a2 * b0;
+            c21 += a2 * b1;
+            c22 += a2 * b2;
+            c23 += a2 * b3;
+
+            float a3 = a[aIndex + 3];
+            c30 += a3 * b0;
+            c31 += a3 * b1;
+            c32 += a3 * b2;
+            c33 += a3 * b3;
+        }
+
+        c[cIndex] += c00;
+        c[cIndex + 1] += c01;
+        c[cIndex + 2] += c02;
+        c[cIndex + 3] += c03;
+        cIndex += ldc;
+        c[cIndex] += c10;
+        c[cIndex + 1] += c11;
+        c[cIndex + 2] += c12;
+        c[cIndex + 3] += c13;
+        cIndex += ldc;
+        c[cIndex] += c20;
+        c[cIndex + 1] += c21;
+        c[cIndex + 2] += c22;
+        c[cIndex + 3] += c23;
+        cIndex += ldc;
+        c[cIndex] += c30;
+        c[cIndex + 1] += c31;
+        c[cIndex + 2] += c32;
+        c[cIndex + 3] += c33;
+    }
+
+    @Override
+    public double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        double sum = 0.0;
+        for (int i = 0; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    @Override
+    public void axpyInt8(int alpha, byte[] x, int xOffset, int[] y, int yOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    @Override
+    public double max(double[] a, int offset, int length) {
+        double max = a[offset];
+        for (int i = 1; i < length; i++) {
+            max = Math.max(max, a[offset + i]);
+        }
+        return max;
+    }
+
+    @Override
+    public void activate(Activation activation, double[] z, double[] a, int offset, int length) {
+        activation.forward(z, a, offset, length);
+    }
+}
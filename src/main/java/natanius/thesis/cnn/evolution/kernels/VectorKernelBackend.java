@@ -0,0 +1,225 @@
+package natanius.thesis.cnn.evolution.kernels;
+
+import static jdk.incubator.vector.VectorOperators.ADD;
+import static jdk.incubator.vector.VectorOperators.B2I;
+import static jdk.incubator.vector.VectorOperators.EXP;
+import static jdk.incubator.vector.VectorOperators.F2D;
+import static jdk.incubator.vector.VectorOperators.LE;
+import static jdk.incubator.vector.VectorOperators.MAX;
+import static natanius.thesis.cnn.evolution.data.Constants.LEAK;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+import natanius.thesis.cnn.evolution.activation.Activation;
+import natanius.thesis.cnn.evolution.activation.LeakyReLU;
+import natanius.thesis.cnn.evolution.activation.Linear;
+import natanius.thesis.cnn.evolution.activation.ReLU;
+import natanius.thesis.cnn.evolution.activation.Sigmoid;
+
+/**
+ * Реалізація ядер на Java Vector API (jdk.incubator.vector).
+ *
+ * <p>Потокові операції (dot, axpy, max, активації) використовують найширший регістр процесора,
+ * хвости коротші за вектор обробляються скалярно. Мікроядра GEMM працюють з 256-бітними векторами:
+ * рядок блоку — це рівно один вектор (4 double або 8 float).
+ *
+ * <p>Клас завантажується лише через {@link Kernels}, коли модуль доступний, тому без
+ * {@code --add-modules jdk.incubator.vector} програма працює зі скалярним backend.
+ * FMA та векторна експонента можуть відрізнятися від скалярного варіанту в останніх бітах.
+ */
+public class VectorKernelBackend implements KernelBackend {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Double> TILE = DoubleVector.SPECIES_256;
+    private static final VectorSpecies<Float> FLOAT_TILE = FloatVector.SPECIES_256;
+    // int8 → int32: кожен байт розширюється до окремої лінії, тому байтовий вектор вчетверо вужчий
+    private static final VectorSpecies<Integer> INT_SPECIES = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Byte> BYTE_PART =
+        VectorSpecies.of(byte.class, VectorShape.forBitSize(INT_SPECIES.vectorBitSize() / 4));
+
+    public VectorKernelBackend() {
+        // На 128-бітних SIMD 256-бітні вектори емулюються, і це повільніше за скалярний код
+        if (SPECIES.length() < TILE.length()) {
+            throw new UnsupportedOperationException(
+                "Preferred vector holds " + SPECIES.length() + " doubles, at least " + TILE.length() + " required"
+            );
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "vector (" + SPECIES.vectorBitSize() + "-bit)";
+    }
+
+    @Override
+    public void gemmKernel(int kc, double[] a, int aIndex, double[] b, int bIndex, double[] c, int cIndex, int ldc) {
+        DoubleVector c0 = DoubleVector.zero(TILE);
+        DoubleVector c1 = DoubleVector.zero(TILE);
+        DoubleVector c2 = DoubleVector.zero(TILE);
+        DoubleVector c3 = DoubleVector.zero(TILE);
+
+        for (int p = 0; p < kc; p++, aIndex += 4, bIndex += 4) {
+            DoubleVector bRow = DoubleVector.fromArray(TILE, b, bIndex);
+            c0 = bRow.fma(DoubleVector.broadcast(TILE, a[aIndex]), c0);
+            c1 = bRow.fma(DoubleVector.broadcast(TILE, a[aIndex + 1]), c1);
+            c2 = bRow.fma(DoubleVector.broadcast(TILE, a[aIndex + 2]), c2);
+            c3 = bRow.fma(DoubleVector.broadcast(TILE, a[aIndex + 3]), c3);
+        }
+
+        c0.add(DoubleVector.fromArray(TILE, c, cIndex)).intoArray(c, cIndex);
+        cIndex += ldc;
+        c1.add(DoubleVector.fromArray(TILE, c, cIndex)).intoArray(c, cIndex);
+        cIndex += ldc;
+        c2.add(DoubleVector.fromArray(TILE, c, cIndex)).intoArray(c, cIndex);
+        cIndex += ldc;
+        c3.add(DoubleVector.fromArray(TILE, c, cIndex)).intoArray(c, cIndex);
+    }
+
+    /**
+     * Рядок блоку 8×8 — один 256-бітний вектор з 8 float. Вісім незалежних акумуляторів приховують
+     * затримку FMA. Перед записом у C кожен рядок розширюється до двох векторів double.
+     */
+    @Override
+    public void gemmKernelFloat(int kc, float[] a, int aIndex, float[] b, int bIndex, double[] c, int cIndex, int ldc) {
+        FloatVector c0 = FloatVector.zero(FLOAT_TILE);
+        FloatVector c1 = FloatVector.zero(FLOAT_TILE);
+        FloatVector c2 = FloatVector.zero(FLOAT_TILE);
+        FloatVector c3 = FloatVector.zero(FLOAT_TILE);
+        FloatVector c4 = FloatVector.zero(FLOAT_TILE);
+        FloatVector c5 = FloatVector.zero(FLOAT_TILE);
+        FloatVector c6 = FloatVector.zero(FLOAT_TILE);
+        FloatVector c7 = FloatVector.zero(FLOAT_TILE);
+
+        for (int p = 0; p < kc; p++, aIndex += 8, bIndex += 8) {
+            FloatVector bRow = FloatVector.fromArray(FLOAT_TILE, b, bIndex);
+            c0 = bRow.fma(FloatVector.broadcast(FLOAT_TILE, a[aIndex]), c0);
+            c1 = bRow.fma(FloatVector.broadcast(FLOAT_TILE, a[aIndex + 1]), c1);
+            c2 = bRow.fma(FloatVector.broadcast(FLOAT_TILE, a[aIndex + 2]), c2);
+            c3 = bRow.fma(FloatVector.broadcast(FLOAT_TILE, a[aIndex + 3]), c3);
+            c4 = bRow.fma(FloatVector.broadcast(FLOAT_TILE, a[aIndex + 4]), c4);
+            c5 = bRow.fma(FloatVector.broadcast(FLOAT_TILE, a[aIndex + 5]), c5);
+            c6 = bRow.fma(FloatVector.broadcast(FLOAT_TILE, a[aIndex + 6]), c6);
+            c7 = bRow.fma(FloatVector.broadcast(FLOAT_TILE, a[aIndex + 7]), c7);
+        }
+
+        addToRow(c0, c, cIndex);
+        addToRow(c1, c, cIndex + ldc);
+        addToRow(c2, c, cIndex + 2 * ldc);
+        addToRow(c3, c, cIndex + 3 * ldc);
+        addToRow(c4, c, cIndex + 4 * ldc);
+        addToRow(c5, c, cIndex + 5 * ldc);
+        addToRow(c6, c, cIndex + 6 * ldc);
+        addToRow(c7, c, cIndex + 7 * ldc);
+    }
+
+    private static void addToRow(FloatVector row, double[] c, int cIndex) {
+        DoubleVector low = (DoubleVector) row.convertShape(F2D, TILE, 0);
+        DoubleVector high = (DoubleVector) row.convertShape(F2D, TILE, 1);
+        low.add(DoubleVector.fromArray(TILE, c, cIndex)).intoArray(c, cIndex);
+        high.add(DoubleVector.fromArray(TILE, c, cIndex + 4)).intoArray(c, cIndex + 4);
+    }
+
+    @Override
+    public double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        DoubleVector sum = DoubleVector.zero(SPECIES);
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, a, aOffset + i);
+            DoubleVector y = DoubleVector.fromArray(SPECIES, b, bOffset + i);
+            sum = x.fma(y, sum);
+        }
+        double result = sum.reduceLanes(ADD);
+        for (; i < length; i++) {
+            result += a[aOffset + i] * b[bOffset + i];
+        }
+        return result;
+    }
+
+    @Override
+    public void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length) {
+        DoubleVector alphaVector = DoubleVector.broadcast(SPECIES, alpha);
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector xv = DoubleVector.fromArray(SPECIES, x, xOffset + i);
+            DoubleVector yv = DoubleVector.fromArray(SPECIES, y, yOffset + i);
+            xv.fma(alphaVector, yv).intoArray(y, yOffset + i);
+        }
+        for (; i < length; i++) {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    @Override
+    public void axpyInt8(int alpha, byte[] x, int xOffset, int[] y, int yOffset, int length) {
+        IntVector alphaVector = IntVector.broadcast(INT_SPECIES, alpha);
+        int i = 0;
+        for (int bound = INT_SPECIES.loopBound(length); i < bound; i += INT_SPECIES.length()) {
+            IntVector xv = (IntVector) ByteVector.fromArray(BYTE_PART, x, xOffset + i).convertShape(B2I, INT_SPECIES, 0);
+            IntVector.fromArray(INT_SPECIES, y, yOffset + i).add(xv.mul(alphaVector)).intoArray(y, yOffset + i);
+        }
+        for (; i < length; i++) {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    @Override
+    public double max(double[] a, int offset, int length) {
+        double max = Double.NEGATIVE_INFINITY;
+        int i = 0;
+        int bound = SPECIES.loopBound(length);
+        if (bound > 0) {
+            DoubleVector maxVector = DoubleVector.fromArray(SPECIES, a, offset);
+            for (i = SPECIES.length(); i < bound; i += SPECIES.length()) {
+                maxVector = maxVector.max(DoubleVector.fromArray(SPECIES, a, offset + i));
+            }
+            max = maxVector.reduceLanes(MAX);
+        }
+        for (; i < length; i++) {
+            max = Math.max(max, a[offset + i]);
+        }
+        return max;
+    }
+
+    @Override
+    public void activate(Activation activation, double[] z, double[] a, int offset, int length) {
+        int i = offset;
+        int end = offset + length;
+        int bound = offset + SPECIES.loopBound(length);
+
+        switch (activation) {
+            case ReLU relu -> {
+                for (; i < bound; i += SPECIES.length()) {
+                    DoubleVector.fromArray(SPECIES, z, i).max(0.0).intoArray(a, i);
+                }
+            }
+            case LeakyReLU leakyRelu -> {
+                for (; i < bound; i += SPECIES.length()) {
+                    DoubleVector v = DoubleVector.fromArray(SPECIES, z, i);
+                    v.blend(v.mul(LEAK), v.compare(LE, 0.0)).intoArray(a, i);
+                }
+            }
+            case Sigmoid sigmoid -> {
+                // σ(z) = 1 / (1 + e^(-z)); хвіст обробляється маскованим вектором, щоб усі елементи
+                // використовували ту саму експоненту (скалярний Sigmoid може бути в режимі fastSigmoid)
+                DoubleVector one = DoubleVector.broadcast(SPECIES, 1.0);
+                for (; i < end; i += SPECIES.length()) {
+                    VectorMask<Double> mask = SPECIES.indexInRange(i, end);
+                    DoubleVector v = DoubleVector.fromArray(SPECIES, z, i, mask);
+                    one.div(v.neg().lanewise(EXP).add(1.0)).intoArray(a, i, mask);
+                }
+                i = end;
+            }
+            case Linear linear -> {
+                // Весь діапазон копіюється нижче одним arraycopy
+                i = offset;
+            }
+        }
+
+        activation.forward(z, a, i, end - i);
+    }
+}
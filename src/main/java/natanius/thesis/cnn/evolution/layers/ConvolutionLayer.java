@@ -2,14 +2,27 @@ package natanius.thesis.cnn.evolution.layers;
 
 import static natanius.thesis.cnn.evolution.data.Constants.L2_REGULARIZATION_LAMBDA;
 import static natanius.thesis.cnn.evolution.data.Constants.RANDOM;
-import static natanius.thesis.cnn.evolution.data.MatrixUtility.add;
+import static natanius.thesis.cnn.evolution.kernels.ConvolutionAlgorithm.FFT;
+import static natanius.thesis.cnn.evolution.kernels.ConvolutionAlgorithm.GEMM;
+import static natanius.thesis.cnn.evolution.kernels.ConvolutionAlgorithm.WINOGRAD;
+import static natanius.thesis.cnn.evolution.kernels.Kernels.BACKEND;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import natanius.thesis.cnn.evolution.activation.Activation;
 import natanius.thesis.cnn.evolution.activation.LeakyReLU;
 import natanius.thesis.cnn.evolution.activation.ReLU;
 import natanius.thesis.cnn.evolution.activation.Sigmoid;
+import natanius.thesis.cnn.evolution.data.Tensor;
+import natanius.thesis.cnn.evolution.data.Workspace;
+import natanius.thesis.cnn.evolution.kernels.ConvolutionAlgorithm;
+import natanius.thesis.cnn.evolution.kernels.Fft;
+import natanius.thesis.cnn.evolution.kernels.Gemm;
+import natanius.thesis.cnn.evolution.kernels.GemmPrecision;
+import natanius.thesis.cnn.evolution.kernels.Im2col;
+import natanius.thesis.cnn.evolution.kernels.Parallel;
+import natanius.thesis.cnn.evolution.kernels.Winograd;
+import natanius.thesis.cnn.evolution.quantization.QuantizedConvolution;
 
 public class ConvolutionLayer extends Layer {
 
@@ -19,13 +32,66 @@ public class ConvolutionLayer extends Layer {
     private final int inLength;
     private final int inRows;
     private final int inCols;
+    private final int numFilters;
+    private final int outRows;
+    private final int outCols;
     private final double learningRate;
-    private final List<double[][][]> filters = new ArrayList<>();
+    /**
+     * Ваги всіх фільтрів в одному буфері [numFilters][inLength][filterSize][filterSize]:
+     * рядок f — це фільтр f, розгорнутий у вектор довжини inLength × filterSize² (матриця A для GEMM).
+     */
+    private final double[] filters;
     private final Activation activation;
     private final double[] biases;
     private double l2Lambda = L2_REGULARIZATION_LAMBDA;
-    private List<List<double[][]>> lastInputBatch;
-    private List<List<double[][]>> preActivationOutputsBatch;
+    /**
+     * Алгоритм обчислення: для кожного розміру батча обирається автотюнером (див. {@link ConvolutionTuner}),
+     * без нього — Winograd F(2×2, 3×3) для 3×3 зі stride 1 (від WINOGRAD_MIN_CHANNELS вхідних каналів),
+     * FFT для 7×7 зі stride 1, решта — im2col + GEMM
+     */
+    private ConvolutionAlgorithm algorithm;
+    private final boolean autotune;
+    private int tunedBatchSize;
+    private GemmPrecision tunedPrecision;
+    private int tunedThreads;
+    /**
+     * Розмір сітки FFT та таблиця її коренів (якщо FFT підтримує цю згортку)
+     */
+    private final int fftSize;
+    private final double[] fftTwiddles;
+    private double[] lastColumnsBatch;
+    private Tensor lastInputBatch;
+    private Tensor lastOutputBatch;
+    private double[] winogradFilters;
+    private double[] winogradInput;
+    private double[] winogradProduct;
+    private double[] fftInput;
+    private double[] fftFilters;
+    private double[] fftDelta;
+
+    // Слоти буферів, що повторно використовуються між батчами
+    private static final int COLUMNS = 0;
+    private static final int PRODUCT = 1;
+    private static final int OUTPUT = 2;
+    private static final int DELTA = 3;
+    private static final int FILTERS_GRADIENT = 4;
+    private static final int BIASES_GRADIENT = 5;
+    private static final int INPUT_GRADIENT = 6;
+    private static final int WINOGRAD_FILTERS = 7;
+    private static final int WINOGRAD_INPUT = 8;
+    private static final int WINOGRAD_PRODUCT = 9;
+    private static final int FFT_INPUT = 10;
+    private static final int FFT_FILTERS = 11;
+    private static final int FFT_DELTA = 12;
+    private final Workspace workspace = new Workspace(13);
+
+    // Кратність зрізів фільтрів (висота мікроядра GEMM) та стовпців ∂L/∂Columns для паралельної обробки
+    private static final int FILTER_SLICE = 8;
+    private static final int COLUMN_SLICE = 64;
+    // Для кількох вхідних каналів перетворення плиток Winograd коштують більше, ніж зекономлені множення
+    private static final int WINOGRAD_MIN_CHANNELS = 8;
+    // Розмір фільтра, для якого поелементні добутки спектрів дешевші за пряму згортку
+    private static final int FFT_FILTER_SIZE = 7;
 
     public ConvolutionLayer(int filterSize,
                             int stepSize,
@@ -42,29 +108,64 @@ public class ConvolutionLayer extends Layer {
         this.inLength = inLength;
         this.inRows = inRows;
         this.inCols = inCols;
+        this.numFilters = numFilters;
+        this.outRows = (inRows - filterSize + 2 * padding) / stepSize + 1;
+        this.outCols = (inCols - filterSize + 2 * padding) / stepSize + 1;
         this.learningRate = learningRate;
         this.activation = activation;
         this.biases = new double[numFilters];
+        this.filters = new double[numFilters * getPatchSize()];
+        this.algorithm = defaultAlgorithm(filterSize, stepSize, padding, inLength);
+        this.fftSize = Fft.size(inRows, inCols, padding, filterSize);
+        this.fftTwiddles = FFT.supports(filterSize, stepSize, padding) ? Fft.twiddles(fftSize) : null;
+        this.autotune = ConvolutionTuner.ENABLED;
 
         generateRandomFilters(numFilters);
     }
 
+    /**
+     * Копія для паралельного навчання зі спільними фільтрами та biases
+     */
+    private ConvolutionLayer(ConvolutionLayer source) {
+        this(source, source.algorithm, source.autotune);
+        this.tunedBatchSize = source.tunedBatchSize;
+        this.tunedPrecision = source.tunedPrecision;
+        this.tunedThreads = source.tunedThreads;
+    }
 
-    @Override
-    public List<double[]> getOutputBatch(List<List<double[][]>> batchInput) {
-        List<List<double[][]>> batchFeatureMaps = convolutionForwardPassBatch(batchInput);
+    private ConvolutionLayer(ConvolutionLayer source, ConvolutionAlgorithm algorithm, boolean autotune) {
+        this.filterSize = source.filterSize;
+        this.stepSize = source.stepSize;
+        this.padding = source.padding;
+        this.inLength = source.inLength;
+        this.inRows = source.inRows;
+        this.inCols = source.inCols;
+        this.numFilters = source.numFilters;
+        this.outRows = source.outRows;
+        this.outCols = source.outCols;
+        this.learningRate = source.learningRate;
+        this.activation = source.activation;
+        this.l2Lambda = source.l2Lambda;
+        this.biases = source.biases;
+        this.filters = source.filters;
+        this.algorithm = algorithm;
+        this.autotune = autotune;
+        this.fftSize = source.fftSize;
+        this.fftTwiddles = source.fftTwiddles;
+        this.precision = source.precision;
+    }
 
-        List<double[]> batchVectors = new ArrayList<>();
-        for (List<double[][]> featureMaps : batchFeatureMaps) {
-            batchVectors.add(matrixToVector(featureMaps));
+    private static ConvolutionAlgorithm defaultAlgorithm(int filterSize, int stepSize, int padding, int inLength) {
+        if (WINOGRAD.supports(filterSize, stepSize, padding) && inLength >= WINOGRAD_MIN_CHANNELS) {
+            return WINOGRAD;
         }
-
-        if (nextLayer != null) {
-            return nextLayer.getOutputBatch(batchFeatureMaps);
+        if (filterSize == FFT_FILTER_SIZE && FFT.supports(filterSize, stepSize, padding)) {
+            return FFT;
         }
-        return batchVectors;
+        return GEMM;
     }
 
+
     /**
      * Виконує forward pass згорткового шару для батчу вхідних feature maps.
      * <p>
@@ -76,11 +177,26 @@ public class ConvolutionLayer extends Layer {
      * Output[i][j] = Σ Σ Σ Input[c][i×stride + x][j×stride + y] × Filter[c][x][y]
      *                c x y
      * </pre>
-     * <b>Важливо:</b> Метод зберігає вхідні дані в {@code lastInputBatch} для
-     * використання під час backpropagation.
+     * <p><b>Реалізація (im2col + GEMM):</b> весь батч один раз розгортається в матрицю стовпців
+     * [K][N×P] (див. {@link Im2col}), після чого всі фільтри обчислюються одним блочним множенням
+     * <pre>
+     * Z[numFilters][N×P] = Filters[numFilters][K] · Columns[K][N×P]
+     * </pre>
+     * Bias та активація застосовуються під час розкладання Z у формат NCHW. Рядки Z (фільтри)
+     * незалежні, тому великі згортки обчислюються зрізами фільтрів паралельно — навіть для одного прикладу.
+     * <p><b>Winograd:</b> для фільтрів 3×3 зі stride 1 Z обчислюється алгоритмом Winograd F(2×2, 3×3)
+     * (див. {@link Winograd}) з у 2.25 раза меншою кількістю множень; матриця стовпців тоді будується
+     * лише під час backpropagation (для градієнта фільтрів).
+     * <p><b>FFT:</b> для фільтрів 7×7 зі stride 1 кожна карта входу та кожен фільтр один раз на батч
+     * перетворюються у спектри (див. {@link Fft}), і Z — це обернене FFT сум їхніх поелементних добутків.
+     * Спектри входу зберігаються для градієнта фільтрів, спектри фільтрів — для градієнта по входу.
+     * <p>
+     * <b>Важливо:</b> Метод зберігає матрицю стовпців у {@code lastColumnsBatch} (вхід для Winograd, спектри для FFT) та вихід
+     * у {@code lastOutputBatch} для використання під час backpropagation (похідна активації виражається через вихід,
+     * тому зважені суми не зберігаються, а активація застосовується на місці).
      *
-     * @param batchInputs список вхідних feature maps розміром [batchSize][inLength][inRows][inCols]
-     * @return список вихідних feature maps після згортки, розмір:
+     * @param batchInput тензор вхідних feature maps розміром [batchSize][inLength][inRows][inCols]
+     * @return тензор вихідних feature maps після згортки, розмір:
      * <p>
      * [batchSize][numFilters][outRows][outCols],
      * <p>
@@ -88,400 +204,413 @@ public class ConvolutionLayer extends Layer {
      * <p>
      * (size + 2×padding - filterSize) / stride + 1
      */
-    public List<List<double[][]>> convolutionForwardPassBatch(List<List<double[][]>> batchInputs) {
-        List<List<double[][]>> batchOutputs = new ArrayList<>();
-        lastInputBatch = new ArrayList<>();
-        preActivationOutputsBatch = new ArrayList<>();
-
-        for (List<double[][]> input : batchInputs) {
-            if (input.size() != inLength) {
-                throw new IllegalArgumentException(
-                    "Expected " + inLength + " input channels, got " + input.size()
-                );
-            }
-
-            List<double[][]> preActivationOutputs = new ArrayList<>();
-            List<double[][]> output = new ArrayList<>();
-
-            // Кожен фільтр створює одну feature map
-            for (int f = 0; f < filters.size(); f++) {
-                double[][] featureMap = convolveMultiChannel(input, filters.get(f), f, preActivationOutputs);
-                output.add(featureMap);
-            }
+    @Override
+    public Tensor forward(Tensor batchInput) {
+        lastOutputBatch = workspace.tensor(OUTPUT, batchInput.getBatchSize(), numFilters, outRows, outCols);
+        computeOutput(batchInput, lastOutputBatch);
+        return lastOutputBatch;
+    }
 
-            batchOutputs.add(output);
-            lastInputBatch.add(cloneListOfMatrices(input));
-            preActivationOutputsBatch.add(cloneListOfMatrices(preActivationOutputs));
-        }
 
-        return batchOutputs;
+    @Override
+    public void infer(Tensor batchInput, Tensor output) {
+        computeOutput(batchInput, output);
     }
 
     /**
-     * Виконує multi-channel згортку: один фільтр застосовується до всіх вхідних каналів.
-     * Результати підсумовуються.
+     * Вихід f(Z + b) у форматі NCHW (спільна частина навчання та передбачення)
      */
-    private double[][] convolveMultiChannel(List<double[][]> inputs,
-                                            double[][][] filter,
-                                            int filterIndex,
-                                            List<double[][]> preActivationOutputs) {
-        double[][][] paddedInputs = new double[inLength][][];
-        for (int c = 0; c < inLength; c++) {
-            paddedInputs[c] = applyPadding(inputs.get(c));
-        }
+    private void computeOutput(Tensor batchInput, Tensor output) {
+        int batchSize = batchInput.getBatchSize();
+        int width = batchSize * outRows * outCols;
+        prepareInput(batchInput);
+        double[] product = productBuffer(width);
+
+        forEachFilterSlice(width, (from, to) -> {
+            multiplyFilters(from, to, product, batchSize);
+            activateSlice(from, to, product, batchSize, output);
+        });
+    }
 
-        int paddedRows = paddedInputs[0].length;
-        int paddedCols = paddedInputs[0][0].length;
-        int outRows = (paddedRows - filterSize) / stepSize + 1;
-        int outCols = (paddedCols - filterSize) / stepSize + 1;
-
-        double[][] preActivationOutput = new double[outRows][outCols];
-        double[][] output = new double[outRows][outCols];
-
-        int outRow = 0;
-        for (int i = 0; i <= paddedRows - filterSize; i += stepSize) {
-            int outCol = 0;
-            for (int j = 0; j <= paddedCols - filterSize; j += stepSize) {
-                double sum = 0.0;
-
-                // Підсумовуємо по всіх каналах
-                for (int c = 0; c < inLength; c++) {
-                    for (int x = 0; x < filterSize; x++) {
-                        for (int y = 0; y < filterSize; y++) {
-                            sum += paddedInputs[c][i + x][j + y] * filter[c][x][y];
-                        }
-                    }
+    /**
+     * Розкладає зважені суми фільтрів [from, to) з Z[numFilters][N×P] у формат NCHW з bias
+     * і застосовує активацію на місці.
+     */
+    private void activateSlice(int from, int to, double[] product, int batchSize, Tensor output) {
+        double[] out = output.getData();
+        int pixels = outRows * outCols;
+        int width = batchSize * pixels;
+        for (int f = from; f < to; f++) {
+            double bias = biases[f];
+            for (int n = 0; n < batchSize; n++) {
+                int src = f * width + n * pixels;
+                int dst = output.offset(n, f, 0, 0);
+                for (int p = 0; p < pixels; p++) {
+                    out[dst + p] = product[src + p] + bias;
                 }
-
-                sum += biases[filterIndex];
-                preActivationOutput[outRow][outCol] = sum;
-                output[outRow][outCol] = activation.forward(sum);
-                outCol++;
             }
-            outRow++;
         }
-
-        preActivationOutputs.add(preActivationOutput);
-        return output;
+        for (int n = 0; n < batchSize; n++) {
+            BACKEND.activate(activation, out, out, output.offset(n, from, 0, 0), (to - from) * pixels);
+        }
     }
 
+    /**
+     * Паралельна обробка фільтрів зрізами (див. {@link Parallel}): фільтри незалежні як у forward pass,
+     * так і в градієнтах фільтрів, тому кожен потік працює зі своїми рядками Z, δ та ∂L/∂Filters.
+     */
+    void forEachFilterSlice(int width, Parallel.RangeTask task) {
+        Parallel.forEachSlice(numFilters, FILTER_SLICE, (long) numFilters * getPatchSize() * width, task);
+    }
 
-    @Override
-    public void backPropagationBatch(List<double[]> dLdOBatch) {
-        // Конвертуємо вектори в feature maps
-        List<List<double[][]>> dLdOFeatureMapsBatch = new ArrayList<>();
-        for (double[] vec : dLdOBatch) {
-            dLdOFeatureMapsBatch.add(vectorToMatrix(vec, getOutputLength(), getOutputRows(), getOutputCols()));
+    /**
+     * Перевіряє вхід і готує його до multiplyFilters: для прямого алгоритму розгортає в матрицю стовпців
+     * Columns[K][N×P] (зберігається для backpropagation), для Winograd — перетворює фільтри та плитки входу,
+     * для FFT — обчислює спектри фільтрів і карт входу. Для нового розміру батча спочатку обирає алгоритм.
+     */
+    void prepareInput(Tensor batchInput) {
+        if (batchInput.getChannels() != inLength) {
+            throw new IllegalArgumentException(
+                "Expected " + inLength + " input channels, got " + batchInput.getChannels()
+            );
+        }
+        validateInput(batchInput, inLength * inRows * inCols);
+
+        int batchSize = batchInput.getBatchSize();
+        // Той самий шар може виконуватися як у ForkJoinPool (оцінка в генетичному алгоритмі), так і поза ним
+        int threads = Parallel.effectiveThreads();
+        if (autotune && (batchSize != tunedBatchSize || precision != tunedPrecision || threads != tunedThreads)) {
+            algorithm = ConvolutionTuner.choose(this, new ConvolutionTuner.Shape(inLength, inRows, inCols,
+                filterSize, stepSize, padding, numFilters, batchSize, precision, BACKEND.getName(), threads));
+            tunedBatchSize = batchSize;
+            tunedPrecision = precision;
+            tunedThreads = threads;
+        }
+        if (algorithm == FFT) {
+            int spectrumLength = Fft.spectrumLength(fftSize);
+            long transformWork = (long) fftSize * fftSize * Integer.numberOfTrailingZeros(fftSize) * inLength;
+            double[] in = batchInput.getData();
+            fftFilters = workspace.buffer(FFT_FILTERS, numFilters * inLength * spectrumLength);
+            fftInput = workspace.buffer(FFT_INPUT, batchSize * inLength * spectrumLength);
+            Parallel.forEachSlice(numFilters, 1, numFilters * transformWork, (from, to) ->
+                Fft.transformFilters(filters, from, to, inLength, filterSize, padding, fftSize, fftTwiddles, fftFilters));
+            Parallel.forEachSlice(inLength, 1, batchSize * transformWork, (from, to) ->
+                Fft.transformMaps(in, from, to, batchSize, inLength, inRows, inCols,
+                    batchInput.getSampleStride(), inRows * inCols, fftSize, fftTwiddles, fftInput));
+            return;
+        }
+        if (algorithm == WINOGRAD) {
+            // Матриця стовпців потрібна лише для градієнта фільтрів, тому будується під час backpropagation
+            lastInputBatch = batchInput;
+            int tileRows = Winograd.tiles(outRows);
+            int tileCols = Winograd.tiles(outCols);
+            int tiles = batchSize * tileRows * tileCols;
+            winogradFilters = workspace.buffer(WINOGRAD_FILTERS, Winograd.POINTS * numFilters * inLength);
+            winogradInput = workspace.buffer(WINOGRAD_INPUT, Winograd.POINTS * inLength * tiles);
+            winogradProduct = workspace.buffer(WINOGRAD_PRODUCT, Winograd.POINTS * numFilters * tiles);
+            Winograd.transformFilters(filters, numFilters, inLength, false, winogradFilters);
+            Winograd.transformInput(batchInput.getData(), batchSize, inLength, inRows, inCols,
+                batchInput.getSampleStride(), inRows * inCols, padding, tileRows, tileCols, winogradInput);
+            return;
         }
 
-        backPropagationBatchInternal(dLdOFeatureMapsBatch);
+        int width = batchSize * outRows * outCols;
+        double[] columns = workspace.buffer(COLUMNS, getPatchSize() * width);
+        Im2col.im2col(batchInput, filterSize, stepSize, padding, outRows, outCols, columns);
+        lastColumnsBatch = columns;
     }
 
     /**
-     * Backpropagation для батча градієнтів
+     * Буфер Z[numFilters][N×P] для multiplyFilters (перезаписується наступним forward pass)
      */
-    private void backPropagationBatchInternal(List<List<double[][]>> dLdOBatch) {
-        int batchSize = dLdOBatch.size();
+    double[] productBuffer(int width) {
+        return workspace.buffer(PRODUCT, numFilters * width);
+    }
 
-        // Ініціалізація акумуляторів градієнтів
-        List<double[][][]> filtersDeltaSum = new ArrayList<>();
-        for (int f = 0; f < filters.size(); f++) {
-            filtersDeltaSum.add(new double[inLength][filterSize][filterSize]);
+    /**
+     * Рядки [from, to) множення Z = Filters · Columns (або його Winograd- чи FFT-еквівалента), без bias і активації.
+     */
+    void multiplyFilters(int from, int to, double[] product, int batchSize) {
+        int pixels = outRows * outCols;
+        int width = batchSize * pixels;
+        if (algorithm == FFT) {
+            Fft.correlate(fftInput, fftFilters, from, to, batchSize, inLength, fftSize, fftTwiddles,
+                product, pixels, width, outRows, outCols);
+            return;
+        }
+        if (algorithm == WINOGRAD) {
+            int tileRows = Winograd.tiles(outRows);
+            int tileCols = Winograd.tiles(outCols);
+            Winograd.multiply(precision, from, to, numFilters, inLength, batchSize * tileRows * tileCols,
+                winogradFilters, winogradInput, winogradProduct);
+            Winograd.transformOutput(winogradProduct, from, to, numFilters, batchSize, tileRows, tileCols,
+                product, pixels, width, outRows, outCols);
+            return;
         }
-        double[] biasesDeltaSum = new double[filters.size()];
-
-        List<List<double[][]>> dLdOPrevBatch = new ArrayList<>();
 
-        // Обробляємо кожен приклад у батчі
-        for (int b = 0; b < batchSize; b++) {
-            List<double[][]> dLdO = dLdOBatch.get(b);
-            List<double[][]> lastInput = lastInputBatch.get(b);
-            List<double[][]> preAct = preActivationOutputsBatch.get(b);
+        int patchSize = getPatchSize();
+        Arrays.fill(product, from * width, to * width, 0.0);
+        Gemm.multiply(precision, to - from, width, patchSize,
+            filters, from * patchSize, patchSize,
+            lastColumnsBatch, 0, width,
+            product, from * width, width);
+    }
 
+    /**
+     * Backpropagation для батча градієнтів через множення матриць.
+     *
+     * <p><b>Позначення:</b> Columns[K][N×P] — матриця im2col, збережена під час forward pass,
+     * δ[numFilters][N×P] — градієнт відносно зваженої суми (до активації).
+     *
+     * <p><b>КРОК 1:</b> Градієнт через activation, одночасно зі збиранням δ з формату NCHW
+     * (f' обчислюється через збережений вихід O = f(Z)):
+     * <pre>
+     *   δ = ∂L/∂O ⊙ f'(Z)
+     * </pre>
+     *
+     * <p><b>КРОК 2:</b> Градієнти фільтрів та bias для всього батча одним множенням:
+     * <pre>
+     *   ∂L/∂Filters[numFilters][K] = δ · Columnsᵀ
+     *   ∂L/∂b[f] = Σ δ[f][·]
+     * </pre>
+     *
+     * <p><b>КРОК 3:</b> Градієнт по входу (лише якщо є попередній шар):
+     * <pre>
+     *   ∂L/∂Columns[K][N×P] = Filtersᵀ · δ
+     * </pre>
+     * після чого col2im повертає кожен елемент у позицію входу, з якої його взято
+     * (stride і padding враховуються індексами). Для першого шару цей крок пропускається.
+     *
+     * <p>Ваги оновлюються пізніше (див. updateParameters), тому градієнт по входу обчислюється
+     * зі старими значеннями фільтрів.
+     */
+    @Override
+    public void backward(Tensor dLdOBatch, Tensor dLdXBatch) {
+        int batchSize = dLdOBatch.getBatchSize();
+        int pixels = outRows * outCols;
+        int width = batchSize * pixels;
+        double[] dLdO = dLdOBatch.getData();
+        double[] out = lastOutputBatch.getData();
+
+        double[] delta = workspace.buffer(DELTA, numFilters * width);
+        double[] biasesDeltaSum = biasesGradient();
+        double[] filtersDeltaSum = filtersGradient();
+        prepareFilterGradients(batchSize);
+        forEachFilterSlice(width, (from, to) -> {
             // КРОК 1: Градієнт через activation
-            List<double[][]> dLdZ = new ArrayList<>();
-            for (int idx = 0; idx < dLdO.size(); idx++) {
-                double[][] gradOutput = dLdO.get(idx);
-                double[][] preActivation = preAct.get(idx);
-                int rows = gradOutput.length;
-                int cols = gradOutput[0].length;
-                double[][] gradPreActivation = new double[rows][cols];
-
-                for (int r = 0; r < rows; r++) {
-                    for (int c = 0; c < cols; c++) {
-                        gradPreActivation[r][c] = gradOutput[r][c] * activation.backward(preActivation[r][c]);
+            for (int f = from; f < to; f++) {
+                double biasSum = 0.0;
+                for (int n = 0; n < batchSize; n++) {
+                    int src = dLdOBatch.offset(n, f, 0, 0);
+                    int dst = f * width + n * pixels;
+                    System.arraycopy(dLdO, src, delta, dst, pixels);
+                    activation.backwardMulFromOutput(out, src, delta, dst, pixels);
+                    for (int p = dst; p < dst + pixels; p++) {
+                        biasSum += delta[p];
                     }
                 }
-                dLdZ.add(gradPreActivation);
+                biasesDeltaSum[f] = biasSum;
             }
 
-            // КРОК 2: Обчислення градієнтів
-            List<double[][][]> filtersDelta = new ArrayList<>();
-            for (int f = 0; f < filters.size(); f++) {
-                filtersDelta.add(new double[inLength][filterSize][filterSize]);
-            }
-            double[] biasesDelta = new double[filters.size()];
-
-            // Градієнт по входу окремо для кожного каналу
-            List<double[][]> dLdOPreviousLayer = new ArrayList<>();
-            for (int c = 0; c < inLength; c++) {
-                dLdOPreviousLayer.add(new double[inRows][inCols]);
-            }
+            // КРОК 2: Градієнти фільтрів
+            multiplyFilterGradients(from, to, delta, width, filtersDeltaSum);
+        });
 
-            // Проходимо по кожному фільтру
-            for (int f = 0; f < filters.size(); f++) {
-                double[][][] currFilter = filters.get(f);
-                double[][] error = dLdZ.get(f);
-                double[][] spacedError = spaceArray(error);
-                double[][] flippedError = flipArrayHorizontal(flipArrayVertical(spacedError));
-
-                // Градієнт bias
-                for (double[] row : error) {
-                    for (double val : row) {
-                        biasesDelta[f] += val;
-                    }
-                }
-
-                // По кожному каналу окремо
-                for (int c = 0; c < inLength; c++) {
-                    double[][] paddedInput = applyPadding(lastInput.get(c));
-                    double[][] dLdF = pureConvolve(paddedInput, flippedError);
-                    add(filtersDelta.get(f)[c], dLdF);
-
-                    // Градієнт по входу (канал c)
-                    double[][] flippedFilter = flipArrayHorizontal(flipArrayVertical(currFilter[c]));
-                    double[][] convResult = fullConvolve(flippedFilter, spacedError);
-
-                    // Обрізаємо до розміру входу
-                    convResult = cropToSize(convResult, inRows, inCols, padding);
-                    add(dLdOPreviousLayer.get(c), convResult);
-                }
-            }
-
-            // Акумулюємо градієнти по батчу
-            for (int f = 0; f < filters.size(); f++) {
-                for (int c = 0; c < inLength; c++) {
-                    for (int i = 0; i < filterSize; i++) {
-                        for (int j = 0; j < filterSize; j++) {
-                            filtersDeltaSum.get(f)[c][i][j] += filtersDelta.get(f)[c][i][j];
-                        }
-                    }
-                }
-                biasesDeltaSum[f] += biasesDelta[f];
-            }
-
-            dLdOPrevBatch.add(dLdOPreviousLayer);
+        // КРОК 3: Градієнт по входу (для першого шару не потрібен)
+        if (dLdXBatch != null) {
+            computeInputGradient(delta, dLdXBatch);
         }
+    }
 
-        // КРОК 3: Оновлення ваг (усереднено по батчу)
-        for (int f = 0; f < filters.size(); f++) {
-            for (int c = 0; c < inLength; c++) {
-                for (int i = 0; i < filterSize; i++) {
-                    for (int j = 0; j < filterSize; j++) {
-                        double grad = filtersDeltaSum.get(f)[c][i][j] / batchSize;
-                        grad += l2Lambda * filters.get(f)[c][i][j];  // L2 регуляризація
-                        filters.get(f)[c][i][j] -= learningRate * grad;
-                    }
-                }
-            }
-            biases[f] -= learningRate * (biasesDeltaSum[f] / batchSize);
+    /**
+     * Для Winograd матриця стовпців не будується у forward pass, тому розгортається тут зі збереженого входу;
+     * для FFT виділяється буфер спектрів δ (заповнюється зрізами в multiplyFilterGradients).
+     */
+    void prepareFilterGradients(int batchSize) {
+        if (algorithm == FFT) {
+            fftDelta = workspace.buffer(FFT_DELTA, batchSize * numFilters * Fft.spectrumLength(fftSize));
         }
-
-        // Передаємо градієнти попередньому шару
-        if (previousLayer != null) {
-            List<double[]> dLdOPrevVectors = new ArrayList<>();
-            for (List<double[][]> featureMaps : dLdOPrevBatch) {
-                dLdOPrevVectors.add(matrixToVector(featureMaps));
-            }
-            previousLayer.backPropagationBatch(dLdOPrevVectors);
+        if (algorithm == WINOGRAD) {
+            double[] columns = workspace.buffer(COLUMNS, getPatchSize() * batchSize * outRows * outCols);
+            Im2col.im2col(lastInputBatch, filterSize, stepSize, padding, outRows, outCols, columns);
+            lastColumnsBatch = columns;
         }
     }
 
-
-    private List<double[][]> cloneListOfMatrices(List<double[][]> list) {
-        List<double[][]> clone = new ArrayList<>();
-        for (double[][] mat : list) {
-            double[][] matCopy = new double[mat.length][];
-            for (int i = 0; i < mat.length; i++) {
-                matCopy[i] = mat[i].clone();
-            }
-            clone.add(matCopy);
+    /**
+     * Рядки [from, to) градієнта фільтрів: ∂L/∂Filters = δ · Columnsᵀ. Для FFT спочатку обчислюються
+     * спектри δ цих фільтрів (вони ж потім дають градієнт по входу).
+     */
+    void multiplyFilterGradients(int from, int to, double[] delta, int width, double[] filtersDeltaSum) {
+        if (algorithm == FFT) {
+            int pixels = outRows * outCols;
+            int batchSize = width / pixels;
+            Fft.transformMaps(delta, from, to, batchSize, numFilters, outRows, outCols,
+                pixels, width, fftSize, fftTwiddles, fftDelta);
+            Fft.filterGradients(fftInput, fftDelta, from, to, batchSize, numFilters, inLength,
+                filterSize, padding, fftSize, fftTwiddles, filtersDeltaSum);
+            return;
         }
-        return clone;
-    }
 
+        int patchSize = getPatchSize();
+        Arrays.fill(filtersDeltaSum, from * patchSize, to * patchSize, 0.0);
+        Gemm.multiplyTransposedB(precision, to - from, patchSize, width,
+            delta, from * width, width,
+            lastColumnsBatch, 0, width,
+            filtersDeltaSum, from * patchSize, patchSize);
+    }
 
     /**
-     * Додає zero padding (обрамлення з нулів) навколо вхідної матриці.
-     *
-     * <p>Padding використовується для:
-     * <ul>
-     *   <li>Збереження просторових розмірів після згортки (same padding)</li>
-     *   <li>Запобігання втраті інформації з країв зображення</li>
-     *   <li>Контролю розміру вихідних feature maps</li>
-     * </ul>
-     *
-     * <p><b>Приклад:</b> padding = 1
-     * <pre>
-     * [1 2]     =>    [0 0 0 0]
-     * [3 4]           [0 1 2 0]
-     *                 [0 3 4 0]
-     *                 [0 0 0 0]
-     * </pre>
+     * Градієнт по входу для вже обчисленого δ[numFilters][N×P]: ∂L/∂Columns = Filtersᵀ · δ, потім col2im.
+     * Викликається після градієнтів фільтрів, бо повторно використовує буфер матриці стовпців.
      *
-     * @param input вхідна матриця розміром [rows][cols]
-     * @return матриця розміром [rows + 2×padding][cols + 2×padding] з доданим padding
+     * @param dLdXBatch тензор для ∂L/∂Input [batchSize][inLength][inRows][inCols] (перезаписується)
      */
-    private double[][] applyPadding(double[][] input) {
-        if (padding == 0) return input;
-
-        int inRows = input.length;
-        int inCols = input[0].length;
-        int paddedRows = inRows + 2 * padding;
-        int paddedCols = inCols + 2 * padding;
-
-        double[][] padded = new double[paddedRows][paddedCols];
-        for (int i = 0; i < inRows; i++) {
-            System.arraycopy(input[i], 0, padded[i + padding], padding, inCols);
+    void computeInputGradient(double[] delta, Tensor dLdXBatch) {
+        int batchSize = dLdXBatch.getBatchSize();
+        int patchSize = getPatchSize();
+        int width = batchSize * outRows * outCols;
+        if (algorithm == WINOGRAD) {
+            computeInputGradientWinograd(delta, dLdXBatch);
+            return;
+        }
+        if (algorithm == FFT) {
+            computeInputGradientFft(dLdXBatch);
+            return;
         }
-        return padded;
-    }
-
-    private double[][] cropToSize(double[][] input, int targetRows, int targetCols, int padding) {
-        double[][] output = new double[targetRows][targetCols];
-        int startRow = padding;
-        int startCol = padding;
 
-        for (int i = 0; i < targetRows && (startRow + i) < input.length; i++) {
-            for (int j = 0; j < targetCols && (startCol + j) < input[0].length; j++) {
-                output[i][j] = input[startRow + i][startCol + j];
+        // Матриця стовпців вже використана для ∂L/∂Filters, тому її буфер повторно використовується для ∂L/∂Columns.
+        // Кожен стовпець ∂L/∂Columns залежить від усіх фільтрів, тому потоки ділять стовпці, а не фільтри.
+        double[] dLdColumns = lastColumnsBatch;
+        Parallel.forEachSlice(width, COLUMN_SLICE, (long) numFilters * patchSize * width, (from, to) -> {
+            for (int k = 0; k < patchSize; k++) {
+                Arrays.fill(dLdColumns, k * width + from, k * width + to, 0.0);
             }
-        }
-        return output;
+            Gemm.multiplyTransposedA(precision, patchSize, to - from, numFilters,
+                filters, 0, patchSize,
+                delta, from, width,
+                dLdColumns, from, width);
+        });
+
+        Arrays.fill(dLdXBatch.getData(), 0, dLdXBatch.getSize(), 0.0);
+        Im2col.col2im(dLdColumns, filterSize, stepSize, padding, outRows, outCols, dLdXBatch);
     }
 
     /**
-     * Виконує spacing операцію (zero interweaving) для матриці градієнтів під час backpropagation.
-     *
-     * <p>Якщо під час forward pass використовувався stride > 1, то градієнти отримані після
-     * згортки мають зменшений розмір. Цей метод вставляє нулі між елементами градієнта,
-     * щоб відновити правильний spacing для подальшого обчислення градієнтів попереднього шару.
-     *
-     * <p><b>Приклад:</b> Для stride = 2 та вхідної матриці:
+     * Градієнт по входу для stride 1 — це згортка δ з фільтрами, повернутими на 180° (канали переставлено),
+     * з padding 2 - p, тому обчислюється тим самим алгоритмом Winograd:
      * <pre>
-     * [1 2]  =>  [1 0 2]
-     * [3 4]      [0 0 0]
-     *            [3 0 4]
+     *   ∂L/∂Input[c] = Σ_f δ[f] ⋆ rot180(Filters[f][c])
      * </pre>
-     *
-     * <p><b>Формула розміру виходу:</b>
-     * <ul>
-     *   <li>outRows = (inputRows - 1) × stride + 1</li>
-     *   <li>outCols = (inputCols - 1) × stride + 1</li>
-     * </ul>
-     *
-     * @param input вхідна матриця градієнтів після згортки
-     * @return матриця з вставленими нулями між елементами, якщо stride > 1;
-     * <p>
-     * незмінена матриця, якщо stride = 1
+     * δ читається прямо з розкладки стовпців [numFilters][N×P], вихідні канали діляться між потоками.
      */
-    private double[][] spaceArray(double[][] input) {
-        if (stepSize == 1) return input;
-
-        int outRows = (input.length - 1) * stepSize + 1;
-        int outCols = (input[0].length - 1) * stepSize + 1;
-        double[][] output = new double[outRows][outCols];
+    private void computeInputGradientWinograd(double[] delta, Tensor dLdXBatch) {
+        int batchSize = dLdXBatch.getBatchSize();
+        int pixels = outRows * outCols;
+        int tileRows = Winograd.tiles(inRows);
+        int tileCols = Winograd.tiles(inCols);
+        int tiles = batchSize * tileRows * tileCols;
+
+        double[] u = workspace.buffer(WINOGRAD_FILTERS, Winograd.POINTS * numFilters * inLength);
+        double[] v = workspace.buffer(WINOGRAD_INPUT, Winograd.POINTS * numFilters * tiles);
+        double[] m = workspace.buffer(WINOGRAD_PRODUCT, Winograd.POINTS * inLength * tiles);
+        Winograd.transformFilters(filters, numFilters, inLength, true, u);
+        Winograd.transformInput(delta, batchSize, numFilters, outRows, outCols,
+            pixels, batchSize * pixels, 2 - padding, tileRows, tileCols, v);
+
+        // Кожен елемент градієнта перезаписується, тому обнулення не потрібне
+        double[] dLdInput = dLdXBatch.getData();
+        Parallel.forEachSlice(inLength, FILTER_SLICE, (long) numFilters * getPatchSize() * batchSize * pixels, (from, to) -> {
+            Winograd.multiply(precision, from, to, inLength, numFilters, tiles, u, v, m);
+            Winograd.transformOutput(m, from, to, inLength, batchSize, tileRows, tileCols,
+                dLdInput, inLength * inRows * inCols, inRows * inCols, inRows, inCols);
+        });
+    }
 
-        for (int i = 0; i < input.length; i++) {
-            for (int j = 0; j < input[0].length; j++) {
-                output[i * stepSize][j * stepSize] = input[i][j];
-            }
-        }
-        return output;
+    /**
+     * Градієнт по входу як добуток спектрів δ (обчислених разом з градієнтом фільтрів) та спектрів фільтрів
+     * з forward pass:
+     * <pre>
+     *   ∂L/∂Input[c] = IFFT(Σ_f Δ̂[f] · Ĝ[f][c])
+     * </pre>
+     * Вхідні канали діляться між потоками.
+     */
+    private void computeInputGradientFft(Tensor dLdXBatch) {
+        int batchSize = dLdXBatch.getBatchSize();
+        // Кожен елемент градієнта перезаписується, тому обнулення не потрібне
+        double[] dLdInput = dLdXBatch.getData();
+        long work = (long) batchSize * numFilters * inLength * Fft.spectrumLength(fftSize);
+        Parallel.forEachSlice(inLength, 1, work, (from, to) ->
+            Fft.convolveTransposed(fftDelta, fftFilters, from, to, batchSize, numFilters, inLength,
+                fftSize, fftTwiddles, dLdInput, inLength * inRows * inCols, inRows * inCols, inRows, inCols));
     }
 
-    private double[][] flipArrayVertical(double[][] array) {
-        int rows = array.length;
-        int cols = array[0].length;
-        double[][] output = new double[rows][cols];
+    /**
+     * Копія зі спільними фільтрами, що завжди використовує заданий алгоритм (для вимірювань автотюнера)
+     */
+    ConvolutionLayer withAlgorithm(ConvolutionAlgorithm algorithm) {
+        return new ConvolutionLayer(this, algorithm, false);
+    }
 
-        for (int i = 0; i < rows; i++) {
-            System.arraycopy(array[i], 0, output[rows - i - 1], 0, cols);
-        }
-        return output;
+    /**
+     * Частина згортки, що залежить від алгоритму: множення фільтрів, градієнт фільтрів (результат
+     * множення виступає як δ) і градієнт по входу, без bias та активації.
+     */
+    void runConvolution(Tensor batchInput) {
+        int batchSize = batchInput.getBatchSize();
+        int width = batchSize * outRows * outCols;
+        prepareInput(batchInput);
+        double[] product = productBuffer(width);
+        forEachFilterSlice(width, (from, to) -> multiplyFilters(from, to, product, batchSize));
+
+        double[] filtersDeltaSum = filtersGradient();
+        prepareFilterGradients(batchSize);
+        forEachFilterSlice(width, (from, to) -> multiplyFilterGradients(from, to, product, width, filtersDeltaSum));
+        computeInputGradient(product, workspace.tensor(INPUT_GRADIENT, batchSize, inLength, inRows, inCols));
     }
 
-    private double[][] flipArrayHorizontal(double[][] array) {
-        int rows = array.length;
-        int cols = array[0].length;
-        double[][] output = new double[rows][cols];
+    /**
+     * Буфер градієнта фільтрів ∂L/∂Filters[numFilters][K]
+     */
+    double[] filtersGradient() {
+        return workspace.buffer(FILTERS_GRADIENT, filters.length);
+    }
 
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < cols; j++) {
-                output[i][cols - j - 1] = array[i][j];
-            }
-        }
-        return output;
+    /**
+     * Буфер Σ δ по кожному фільтру (градієнт biases)
+     */
+    double[] biasesGradient() {
+        return workspace.buffer(BIASES_GRADIENT, numFilters);
     }
 
     /**
-     * Виконує чисту операцію згортки БЕЗ застосування активаційної функції та БЕЗ padding.
-     * Використовується під час backpropagation для обчислення градієнтів фільтрів.
+     * Оновлення ваг (усереднено по батчу, з L2 регуляризацією)
      */
-    private double[][] pureConvolve(double[][] input, double[][] filter) {
-        int inRows = input.length;
-        int inCols = input[0].length;
-        int fRows = filter.length;
-        int fCols = filter[0].length;
-        int outRows = (inRows - fRows) + 1;
-        int outCols = (inCols - fCols) + 1;
-
-        double[][] output = new double[outRows][outCols];
-
-        int outRow = 0;
-        for (int i = 0; i <= inRows - fRows; i++) {
-            int outCol = 0;
-            for (int j = 0; j <= inCols - fCols; j++) {
-                double sum = 0.0;
-                for (int x = 0; x < fRows; x++) {
-                    for (int y = 0; y < fCols; y++) {
-                        sum += input[i + x][j + y] * filter[x][y];
-                    }
-                }
-                output[outRow][outCol] = sum;
-                outCol++;
-            }
-            outRow++;
+    @Override
+    public void updateParameters(int batchSize, int from, int to) {
+        double[] filtersDeltaSum = filtersGradient();
+        double[] biasesDeltaSum = biasesGradient();
+
+        for (int w = from; w < Math.min(to, filters.length); w++) {
+            double grad = filtersDeltaSum[w] / batchSize;
+            grad += l2Lambda * filters[w];  // L2 регуляризація
+            filters[w] -= learningRate * grad;
         }
-        return output;
-    }
-
-    private double[][] fullConvolve(double[][] input, double[][] filter) {
-        int inRows = input.length;
-        int inCols = input[0].length;
-        int fRows = filter.length;
-        int fCols = filter[0].length;
-        int outRows = inRows + fRows - 1;
-        int outCols = inCols + fCols - 1;
-
-        double[][] output = new double[outRows][outCols];
-
-        for (int i = 0; i < outRows; i++) {
-            for (int j = 0; j < outCols; j++) {
-                double sum = 0.0;
-                for (int x = 0; x < fRows; x++) {
-                    for (int y = 0; y < fCols; y++) {
-                        int inRow = i - x;
-                        int inCol = j - y;
-                        if (inRow >= 0 && inCol >= 0 && inRow < inRows && inCol < inCols) {
-                            sum += filter[x][y] * input[inRow][inCol];
-                        }
-                    }
-                }
-                output[i][j] = sum;
-            }
+        for (int f = Math.max(from, filters.length) - filters.length; f < to - filters.length; f++) {
+            biases[f] -= learningRate * (biasesDeltaSum[f] / batchSize);
         }
-        return output;
+    }
+
+    @Override
+    public ConvolutionLayer replicate() {
+        return new ConvolutionLayer(this);
+    }
+
+    @Override
+    public void addGradients(Layer replica) {
+        ConvolutionLayer other = (ConvolutionLayer) replica;
+        BACKEND.axpy(1.0, other.filtersGradient(), 0, filtersGradient(), 0, filters.length);
+        BACKEND.axpy(1.0, other.biasesGradient(), 0, biasesGradient(), 0, numFilters);
     }
 
     /**
@@ -520,16 +649,8 @@ public class ConvolutionLayer extends Layer {
         int fanIn = filterSize * filterSize * inLength;
         double std = Math.sqrt(2.0 / fanIn);
 
-        for (int n = 0; n < numFilters; n++) {
-            double[][][] newFilter = new double[inLength][filterSize][filterSize];
-            for (int c = 0; c < inLength; c++) {
-                for (int i = 0; i < filterSize; i++) {
-                    for (int j = 0; j < filterSize; j++) {
-                        newFilter[c][i][j] = RANDOM.nextGaussian() * std;
-                    }
-                }
-            }
-            filters.add(newFilter);
+        for (int w = 0; w < numFilters * getPatchSize(); w++) {
+            filters[w] = RANDOM.nextGaussian() * std;
         }
     }
 
@@ -547,22 +668,47 @@ public class ConvolutionLayer extends Layer {
         int fanOut = getOutputRows() * getOutputCols() * numFilters;
         double limit = Math.sqrt(6.0 / (fanIn + fanOut));
 
-        for (int n = 0; n < numFilters; n++) {
-            double[][][] newFilter = new double[inLength][filterSize][filterSize];
-            for (int c = 0; c < inLength; c++) {
-                for (int i = 0; i < filterSize; i++) {
-                    for (int j = 0; j < filterSize; j++) {
-                        newFilter[c][i][j] = (RANDOM.nextDouble() * 2 - 1) * limit;
-                    }
-                }
-            }
-            filters.add(newFilter);
+        for (int w = 0; w < numFilters * getPatchSize(); w++) {
+            filters[w] = (RANDOM.nextDouble() * 2 - 1) * limit;
         }
     }
 
+    @Override
+    public QuantizedConvolution quantize() {
+        return quantize(1, 1);
+    }
+
+    /**
+     * Квантизована згортка, злита з max pooling windowSize×windowSize / stepSize (1×1 / 1 — без pooling)
+     */
+    QuantizedConvolution quantize(int poolWindow, int poolStep) {
+        return new QuantizedConvolution(filters, biases, activation, filterSize, stepSize, padding,
+            inLength, inRows, inCols, poolWindow, poolStep);
+    }
+
+    double getBias(int filter) {
+        return biases[filter];
+    }
+
+    Activation getActivation() {
+        return activation;
+    }
+
+    /**
+     * Кількість ваг одного фільтра: K = inLength × filterSize²
+     */
+    private int getPatchSize() {
+        return inLength * filterSize * filterSize;
+    }
+
+    @Override
+    public int getInputElements() {
+        return inLength * inRows * inCols;
+    }
+
     @Override
     public int getOutputLength() {
-        return filters.size();
+        return numFilters;
     }
 
     /**
@@ -574,7 +720,7 @@ public class ConvolutionLayer extends Layer {
      */
     @Override
     public int getOutputRows() {
-        return (inRows - filterSize + 2 * padding) / stepSize + 1;
+        return outRows;
     }
 
     /**
@@ -582,7 +728,7 @@ public class ConvolutionLayer extends Layer {
      */
     @Override
     public int getOutputCols() {
-        return (inCols - filterSize + 2 * padding) / stepSize + 1;
+        return outCols;
     }
 
     @Override
@@ -592,13 +738,18 @@ public class ConvolutionLayer extends Layer {
 
     @Override
     public int getParameterCount() {
-        return filters.size() * filterSize * filterSize * inLength  // ваги
-            + filters.size();                                       // biases
+        return numFilters * filterSize * filterSize * inLength  // ваги
+            + numFilters;                                       // biases
+    }
+
+    @Override
+    public List<double[]> getParameterBlocks() {
+        return List.of(filters, biases);
     }
 
     @Override
     public String toString() {
         return String.format("🌀 CONVOLUTION | %d filters | %dx%d kernel | Stride: %d | Padding: %d | Parameters: %d",
-            filters.size(), filterSize, filterSize, stepSize, padding, getParameterCount());
+            numFilters, filterSize, filterSize, stepSize, padding, getParameterCount());
     }
 }
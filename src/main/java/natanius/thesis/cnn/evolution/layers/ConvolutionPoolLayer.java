@@ -0,0 +1,286 @@
+package natanius.thesis.cnn.evolution.layers;
+
+import static natanius.thesis.cnn.evolution.kernels.Kernels.BACKEND;
+
+import java.util.Arrays;
+import java.util.List;
+import natanius.thesis.cnn.evolution.activation.Activation;
+import natanius.thesis.cnn.evolution.data.Tensor;
+import natanius.thesis.cnn.evolution.data.Workspace;
+import natanius.thesis.cnn.evolution.kernels.GemmPrecision;
+import natanius.thesis.cnn.evolution.quantization.QuantizedConvolution;
+
+/**
+ * Злиті шари Convolution → activation → MaxPool (NetworkBuilder створює їх для сусідніх conv/pool генів).
+ *
+ * <p><b>Forward pass:</b> після множення фільтрів на матрицю стовпців (див. {@link ConvolutionLayer})
+ * вікна pooling шукаються одразу в Z[numFilters][N×P]. Усі активації монотонно неспадні, тому
+ * <pre>
+ *   max f(z + b) = f(max z + b)
+ * </pre>
+ * і активація обчислюється лише для виходу pooling. Повні карти зважених сум та активацій
+ * не записуються і не читаються повторно.
+ *
+ * <p><b>Для backpropagation</b> на кожну клітинку виходу зберігається лише позиція максимуму
+ * (індекс пікселя карти згортки); похідна активації обчислюється через сам вихід O = f(z_max).
+ * Градієнт повертається тільки в ці позиції:
+ * <pre>
+ *   δ[f][n × P + argmax] += ∂L/∂O[n][f][r][c] × f'(z_max)
+ * </pre>
+ * після чого решта backpropagation (фільтри, вхід, оновлення ваг) виконується згортковим шаром.
+ */
+public class ConvolutionPoolLayer extends Layer {
+
+    private final ConvolutionLayer convolution;
+    private final int windowSize;
+    private final int stepSize;
+    private final int numFilters;
+    private final int convRows;
+    private final int convCols;
+    private final int outRows;
+    private final int outCols;
+
+    private Tensor lastOutputBatch;
+    private int[] lastArgmaxBatch;
+
+    // Слоти буферів, що повторно використовуються між батчами
+    private static final int OUTPUT = 0;
+    private static final int ARGMAX = 1;
+    private static final int DELTA = 2;
+    private static final int POOLED_DELTA = 3;
+    private final Workspace workspace = new Workspace(4);
+
+    public ConvolutionPoolLayer(ConvolutionLayer convolution, int windowSize, int stepSize) {
+        this.convolution = convolution;
+        this.windowSize = windowSize;
+        this.stepSize = stepSize;
+        this.numFilters = convolution.getOutputLength();
+        this.convRows = convolution.getOutputRows();
+        this.convCols = convolution.getOutputCols();
+        this.outRows = (convRows - windowSize) / stepSize + 1;
+        this.outCols = (convCols - windowSize) / stepSize + 1;
+    }
+
+    @Override
+    public void setPrecision(GemmPrecision precision) {
+        super.setPrecision(precision);
+        convolution.setPrecision(precision);
+    }
+
+
+    /**
+     * Forward pass: згортка, max pooling по зважених сумах та активація виходу pooling.
+     *
+     * @param batchInput тензор вхідних feature maps [batchSize][inLength][inRows][inCols]
+     * @return тензор [batchSize][numFilters][outRows][outCols]
+     */
+    @Override
+    public Tensor forward(Tensor batchInput) {
+        int batchSize = batchInput.getBatchSize();
+        int width = batchSize * convRows * convCols;
+        convolution.prepareInput(batchInput);
+        double[] product = convolution.productBuffer(width);
+
+        Tensor output = workspace.tensor(OUTPUT, batchSize, numFilters, outRows, outCols);
+        lastArgmaxBatch = workspace.intBuffer(ARGMAX, output.getSize());
+        lastOutputBatch = output;
+        int[] argmax = lastArgmaxBatch;
+
+        convolution.forEachFilterSlice(width, (from, to) -> {
+            convolution.multiplyFilters(from, to, product, batchSize);
+            poolSlice(from, to, product, batchSize, argmax, output);
+        });
+        return output;
+    }
+
+    /**
+     * Pooling та активація для фільтрів [from, to): у вихід записується max z + b (активація потім
+     * застосовується на місці), у argmax — позиція максимуму (лише для навчання).
+     */
+    private void poolSlice(int from, int to, double[] product, int batchSize, int[] argmax, Tensor output) {
+        double[] maxZ = output.getData();
+        int pixels = convRows * convCols;
+        int width = batchSize * pixels;
+        int outPerChannel = outRows * outCols;
+
+        for (int n = 0; n < batchSize; n++) {
+            for (int f = from; f < to; f++) {
+                double bias = convolution.getBias(f);
+                int mapBase = f * width + n * pixels;
+                int outIndex = output.offset(n, f, 0, 0);
+
+                for (int r = 0; r < outRows; r++) {
+                    for (int c = 0; c < outCols; c++, outIndex++) {
+                        int startRow = r * stepSize;
+                        int startCol = c * stepSize;
+
+                        if (argmax == null) {
+                            int windowBase = mapBase + startRow * convCols + startCol;
+                            double max = Double.NEGATIVE_INFINITY;
+                            for (int x = 0; x < windowSize; x++) {
+                                max = Math.max(max, BACKEND.max(product, windowBase + x * convCols, windowSize));
+                            }
+                            maxZ[outIndex] = max + bias;
+                            continue;
+                        }
+
+                        double max = Double.NEGATIVE_INFINITY;
+                        int maxPixel = -1;
+                        for (int x = 0; x < windowSize; x++) {
+                            int pixel = (startRow + x) * convCols + startCol;
+                            for (int y = 0; y < windowSize; y++, pixel++) {
+                                double value = product[mapBase + pixel];
+                                if (value > max) {
+                                    max = value;
+                                    maxPixel = pixel;
+                                }
+                            }
+                        }
+
+                        maxZ[outIndex] = max + bias;
+                        argmax[outIndex] = maxPixel;
+                    }
+                }
+            }
+            BACKEND.activate(convolution.getActivation(), maxZ, maxZ,
+                output.offset(n, from, 0, 0), (to - from) * outPerChannel);
+        }
+    }
+
+
+    /**
+     * Forward pass без збереження виходу і позицій максимумів (лише для передбачення).
+     */
+    @Override
+    public void infer(Tensor batchInput, Tensor output) {
+        int batchSize = batchInput.getBatchSize();
+        int width = batchSize * convRows * convCols;
+        convolution.prepareInput(batchInput);
+        double[] product = convolution.productBuffer(width);
+
+        convolution.forEachFilterSlice(width, (from, to) -> {
+            convolution.multiplyFilters(from, to, product, batchSize);
+            poolSlice(from, to, product, batchSize, null, output);
+        });
+    }
+
+
+    /**
+     * Backpropagation: градієнт через активацію та pooling збирається одразу в δ[numFilters][N×P]
+     * згорткового шару, який обчислює решту градієнтів і зберігає їх для updateParameters.
+     *
+     * @param dLdOBatch тензор градієнтів виходу [batchSize][numFilters][outRows][outCols]
+     */
+    @Override
+    public void backward(Tensor dLdOBatch, Tensor dLdXBatch) {
+        int batchSize = dLdOBatch.getBatchSize();
+        int pixels = convRows * convCols;
+        int width = batchSize * pixels;
+        int outPerChannel = outRows * outCols;
+        double[] dLdO = dLdOBatch.getData();
+        double[] out = lastOutputBatch.getData();
+        int[] argmax = lastArgmaxBatch;
+        Activation activation = convolution.getActivation();
+
+        double[] delta = workspace.buffer(DELTA, numFilters * width);
+        // ∂L/∂O × f'(z_max) для кожної клітинки виходу pooling
+        double[] pooledDelta = workspace.buffer(POOLED_DELTA, dLdOBatch.getSize());
+        double[] biasesDeltaSum = convolution.biasesGradient();
+        double[] filtersDeltaSum = convolution.filtersGradient();
+        convolution.prepareFilterGradients(batchSize);
+
+        convolution.forEachFilterSlice(width, (from, to) -> {
+            Arrays.fill(delta, from * width, to * width, 0.0);
+            for (int f = from; f < to; f++) {
+                double biasSum = 0.0;
+                for (int n = 0; n < batchSize; n++) {
+                    int mapBase = f * width + n * pixels;
+                    int outBase = dLdOBatch.offset(n, f, 0, 0);
+                    System.arraycopy(dLdO, outBase, pooledDelta, outBase, outPerChannel);
+                    activation.backwardMulFromOutput(out, outBase, pooledDelta, outBase, outPerChannel);
+
+                    for (int k = outBase; k < outBase + outPerChannel; k++) {
+                        int maxPixel = argmax[k];
+                        // Помилка передається тільки в позицію максимуму
+                        if (maxPixel != -1) {
+                            double d = pooledDelta[k];
+                            delta[mapBase + maxPixel] += d;
+                            biasSum += d;
+                        }
+                    }
+                }
+                biasesDeltaSum[f] = biasSum;
+            }
+            convolution.multiplyFilterGradients(from, to, delta, width, filtersDeltaSum);
+        });
+
+        if (dLdXBatch != null) {
+            convolution.computeInputGradient(delta, dLdXBatch);
+        }
+    }
+
+
+    @Override
+    public void updateParameters(int batchSize, int from, int to) {
+        convolution.updateParameters(batchSize, from, to);
+    }
+
+    @Override
+    public ConvolutionPoolLayer replicate() {
+        ConvolutionPoolLayer replica = new ConvolutionPoolLayer(convolution.replicate(), windowSize, stepSize);
+        replica.setPrecision(precision);
+        return replica;
+    }
+
+    @Override
+    public void addGradients(Layer replica) {
+        convolution.addGradients(((ConvolutionPoolLayer) replica).convolution);
+    }
+
+    @Override
+    public QuantizedConvolution quantize() {
+        return convolution.quantize(windowSize, stepSize);
+    }
+
+
+    @Override
+    public int getInputElements() {
+        return convolution.getInputElements();
+    }
+
+    @Override
+    public int getOutputLength() {
+        return numFilters;
+    }
+
+    @Override
+    public int getOutputRows() {
+        return outRows;
+    }
+
+    @Override
+    public int getOutputCols() {
+        return outCols;
+    }
+
+    @Override
+    public int getOutputElements() {
+        return numFilters * outRows * outCols;
+    }
+
+    @Override
+    public int getParameterCount() {
+        return convolution.getParameterCount();
+    }
+
+    @Override
+    public List<double[]> getParameterBlocks() {
+        return convolution.getParameterBlocks();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s + MAX POOL %dx%d/%d | Output: %dx%d",
+            convolution, windowSize, windowSize, stepSize, outRows, outCols);
+    }
+}
@@ -0,0 +1,187 @@
+package natanius.thesis.cnn.evolution.layers;
+
+import static lombok.AccessLevel.PRIVATE;
+import static natanius.thesis.cnn.evolution.kernels.ConvolutionAlgorithm.GEMM;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.NoArgsConstructor;
+import natanius.thesis.cnn.evolution.data.Tensor;
+import natanius.thesis.cnn.evolution.kernels.ConvolutionAlgorithm;
+import natanius.thesis.cnn.evolution.kernels.GemmPrecision;
+import natanius.thesis.cnn.evolution.kernels.Kernels;
+import natanius.thesis.cnn.evolution.kernels.Parallel;
+
+/**
+ * Вибір найшвидшого алгоритму згортки (im2col + GEMM, Winograd, FFT) для кожної форми шару.
+ *
+ * <p>Під час першого forward pass з новою формою кожен придатний алгоритм кілька разів виконує
+ * forward pass, градієнт фільтрів і градієнт по входу на синтетичному батчі; переможець
+ * запам'ятовується в пам'яті та дописується у {@value #CACHE_FILE_PATH}, тому наступні запуски
+ * генетичного алгоритму, що повторюють ті самі форми шарів, не вимірюють їх повторно. Ключ рішення містить
+ * також бекенд ядер і кількість потоків, якими шар справді ділить роботу (1 у ForkJoinPool, тобто під час
+ * оцінки в генетичному алгоритмі чи data parallelism, інакше {@code -Dcnn.threads}): вимірювання з іншим
+ * бекендом (наприклад, без {@code --add-modules jdk.incubator.vector}) або іншим паралелізмом не переносяться.
+ *
+ * <p>Інші мережі генетичного алгоритму можуть навчатися паралельно з вимірюванням, тому час кандидата —
+ * медіана кількох прогонів, а не мінімум: окремий вдалий або сповільнений прогін не визначає рішення.
+ *
+ * <p>Вимкнути автотюнінг (алгоритм за замовчуванням для розміру фільтра) можна через {@code -Dcnn.autotune=false}.
+ */
+@NoArgsConstructor(access = PRIVATE)
+final class ConvolutionTuner {
+
+    static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("cnn.autotune", "true"));
+    private static final String CACHE_FILE_PATH = "logs/conv_algorithms.csv";
+    private static final String HEADER =
+        "inLength,inRows,inCols,filterSize,stepSize,padding,numFilters,batchSize,precision,backend,parallelism,algorithm";
+    private static final int COLUMNS = 12;
+    // Перший прогін кожного кандидата прогріває JIT та буфери і не враховується
+    private static final int WARMUP_RUNS = 1;
+    private static final int MEASURED_RUNS = 5;
+
+    private static final Map<Shape, ConvolutionAlgorithm> DECISIONS = load();
+
+    /**
+     * Форма згорткового шару для конкретного розміру батча, бекенда ядер ({@link Kernels#BACKEND})
+     * і кількості потоків, яку шар справді використовує ({@link Parallel#effectiveThreads()})
+     */
+    record Shape(int inLength, int inRows, int inCols, int filterSize, int stepSize, int padding,
+                 int numFilters, int batchSize, GemmPrecision precision, String backend, int parallelism) {
+
+        private String toCsv() {
+            return String.join(",", String.valueOf(inLength), String.valueOf(inRows), String.valueOf(inCols),
+                String.valueOf(filterSize), String.valueOf(stepSize), String.valueOf(padding),
+                String.valueOf(numFilters), String.valueOf(batchSize), precision.name(), backend,
+                String.valueOf(parallelism));
+        }
+    }
+
+    /**
+     * Алгоритм для форми шару: з кешу або, для нової форми, за результатами вимірювань на копії шару.
+     */
+    static ConvolutionAlgorithm choose(ConvolutionLayer layer, Shape shape) {
+        ConvolutionAlgorithm cached = DECISIONS.get(shape);
+        return cached != null ? cached : tune(layer, shape);
+    }
+
+    /**
+     * Вимірювання виконуються по одному (без конкуренції між собою за ядра).
+     */
+    private static synchronized ConvolutionAlgorithm tune(ConvolutionLayer layer, Shape shape) {
+        ConvolutionAlgorithm cached = DECISIONS.get(shape);
+        if (cached != null) {
+            return cached;
+        }
+
+        List<ConvolutionAlgorithm> candidates = new ArrayList<>();
+        for (ConvolutionAlgorithm algorithm : ConvolutionAlgorithm.values()) {
+            if (algorithm.supports(shape.filterSize(), shape.stepSize(), shape.padding())) {
+                candidates.add(algorithm);
+            }
+        }
+        if (candidates.size() == 1) {
+            // Вимірювати нічого, у файл не записується
+            DECISIONS.put(shape, candidates.get(0));
+            return candidates.get(0);
+        }
+
+        Tensor input = syntheticInput(shape);
+        ConvolutionAlgorithm best = GEMM;
+        long bestTime = Long.MAX_VALUE;
+        for (ConvolutionAlgorithm algorithm : candidates) {
+            ConvolutionLayer candidate = layer.withAlgorithm(algorithm);
+            long[] times = new long[MEASURED_RUNS];
+            for (int run = 0; run < WARMUP_RUNS + MEASURED_RUNS; run++) {
+                long start = System.nanoTime();
+                candidate.runConvolution(input);
+                long elapsed = System.nanoTime() - start;
+                if (run >= WARMUP_RUNS) {
+                    times[run - WARMUP_RUNS] = elapsed;
+                }
+            }
+            Arrays.sort(times);
+            long time = times[MEASURED_RUNS / 2];
+            if (time < bestTime) {
+                bestTime = time;
+                best = algorithm;
+            }
+        }
+
+        DECISIONS.put(shape, best);
+        save(shape, best);
+        return best;
+    }
+
+    /**
+     * Детермінований вхід потрібної форми (глобальний RANDOM не використовується, щоб не змінювати
+     * відтворюваність навчання)
+     */
+    private static Tensor syntheticInput(Shape shape) {
+        Tensor input = new Tensor(shape.batchSize(), shape.inLength(), shape.inRows(), shape.inCols());
+        double[] data = input.getData();
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (i * 37 % 101) / 101.0 - 0.5;
+        }
+        return input;
+    }
+
+    private static Map<Shape, ConvolutionAlgorithm> load() {
+        Map<Shape, ConvolutionAlgorithm> decisions = new ConcurrentHashMap<>();
+        File file = new File(CACHE_FILE_PATH);
+        if (!file.exists()) {
+            return decisions;
+        }
+
+        boolean obsolete = false;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line = reader.readLine();
+            obsolete = !HEADER.equals(line);
+            while (!obsolete && (line = reader.readLine()) != null) {
+                String[] values = line.split(",");
+                if (values.length != COLUMNS) {
+                    continue;
+                }
+                try {
+                    Shape shape = new Shape(Integer.parseInt(values[0]), Integer.parseInt(values[1]),
+                        Integer.parseInt(values[2]), Integer.parseInt(values[3]), Integer.parseInt(values[4]),
+                        Integer.parseInt(values[5]), Integer.parseInt(values[6]), Integer.parseInt(values[7]),
+                        GemmPrecision.valueOf(values[8]), values[9], Integer.parseInt(values[10]));
+                    decisions.put(shape, ConvolutionAlgorithm.valueOf(values[11]));
+                } catch (IllegalArgumentException e) {
+                    // Пошкоджений рядок лише означає повторне вимірювання цієї форми
+                    System.err.println("Skipping malformed line in " + CACHE_FILE_PATH + ": " + line);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (obsolete) {
+            // Кеш старого формату (без бекенда чи з кількістю потоків замість фактичного паралелізму) відкидається і створюється заново
+            file.delete();
+        }
+        return decisions;
+    }
+
+    private static void save(Shape shape, ConvolutionAlgorithm algorithm) {
+        File file = new File(CACHE_FILE_PATH);
+        boolean created = !file.exists();
+        file.getParentFile().mkdirs();
+        try (FileWriter writer = new FileWriter(file, true)) {
+            if (created) {
+                writer.write(HEADER + "\n");
+            }
+            writer.write(shape.toCsv() + "," + algorithm.name() + "\n");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
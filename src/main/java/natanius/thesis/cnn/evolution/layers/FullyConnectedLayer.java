@@ -3,26 +3,41 @@ package natanius.thesis.cnn.evolution.layers;
 import static natanius.thesis.cnn.evolution.data.Constants.L2_REGULARIZATION_LAMBDA;
 import static natanius.thesis.cnn.evolution.data.Constants.OUTPUT_CLASSES;
 import static natanius.thesis.cnn.evolution.data.Constants.RANDOM;
+import static natanius.thesis.cnn.evolution.kernels.Kernels.BACKEND;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import natanius.thesis.cnn.evolution.activation.Activation;
 import natanius.thesis.cnn.evolution.activation.LeakyReLU;
 import natanius.thesis.cnn.evolution.activation.Linear;
 import natanius.thesis.cnn.evolution.activation.ReLU;
 import natanius.thesis.cnn.evolution.activation.Sigmoid;
+import natanius.thesis.cnn.evolution.data.Tensor;
+import natanius.thesis.cnn.evolution.data.Workspace;
+import natanius.thesis.cnn.evolution.kernels.Gemm;
+import natanius.thesis.cnn.evolution.quantization.QuantizedFullyConnected;
 
 public class FullyConnectedLayer extends Layer {
 
     private final Activation activation;
-    private final double[][] weights;
+    /**
+     * Матриця ваг W^(l) в одному буфері [inLength][outLength] (row-major)
+     */
+    private final double[] weights;
     private final double[] biases;
     private final int inLength;
     private final int outLength;
     private final double learningRate;
     private double l2Lambda = L2_REGULARIZATION_LAMBDA;
-    private List<double[]> lastXBatch;
-    private List<double[]> lastZBatch;
+    private Tensor lastXBatch;
+    private Tensor lastOutputBatch;
+
+    // Слоти буферів, що повторно використовуються між батчами
+    private static final int OUTPUT = 0;
+    private static final int DELTA = 1;
+    private static final int WEIGHTS_GRADIENT = 2;
+    private static final int BIASES_GRADIENT = 3;
+    private final Workspace workspace = new Workspace(4);
 
     public FullyConnectedLayer(Activation activation, int inLength, double learningRate) {
         this(activation, inLength, OUTPUT_CLASSES, learningRate);
@@ -34,7 +49,7 @@ public class FullyConnectedLayer extends Layer {
         this.outLength = outLength;
         this.learningRate = learningRate;
 
-        weights = new double[inLength][outLength];
+        weights = new double[inLength * outLength];
         if (activation instanceof ReLU || activation instanceof LeakyReLU || activation instanceof Linear) {
             initWeightsHe();
         } else if (activation instanceof Sigmoid) {
@@ -49,30 +64,21 @@ public class FullyConnectedLayer extends Layer {
         biases = new double[outLength];
     }
 
-
-    @Override
-    public List<double[]> getOutputBatch(List<List<double[][]>> batchInput) {
-        // Конвертуємо входи з feature maps у вектори
-        List<double[]> batchVectors = new ArrayList<>();
-        for (List<double[][]> input : batchInput) {
-            batchVectors.add(matrixToVector(input));
-        }
-
-        // Forward pass для батча
-        List<double[]> output = fullyConnectedForwardPassBatch(batchVectors);
-
-        // Передаємо наступному шару, якщо є
-        if (nextLayer != null) {
-            List<List<double[][]>> outputAsFeatureMaps = new ArrayList<>();
-            for (double[] vec : output) {
-                List<double[][]> featureMap = vectorToMatrix(vec, 1, 1, vec.length);
-                outputAsFeatureMaps.add(featureMap);
-            }
-            return nextLayer.getOutputBatch(outputAsFeatureMaps);
-        }
-        return output;
+    /**
+     * Копія для паралельного навчання зі спільними вагами та biases
+     */
+    private FullyConnectedLayer(FullyConnectedLayer source) {
+        this.activation = source.activation;
+        this.inLength = source.inLength;
+        this.outLength = source.outLength;
+        this.learningRate = source.learningRate;
+        this.l2Lambda = source.l2Lambda;
+        this.weights = source.weights;
+        this.biases = source.biases;
+        this.precision = source.precision;
     }
 
+
     /**
      * Реалізує прямий прохід (forward propagation) через повнозв'язний шар.
      *
@@ -89,7 +95,7 @@ public class FullyConnectedLayer extends Layer {
      * <pre>
      *   z^(l) = W^(l) · a^(l-1) + b^(l)
      * </pre>
-     * де · означає матричне множення (у коді: weights[i][j] * input[i]).
+     * де · означає матричне множення (для батча: Z[batchSize][outLength] = X[batchSize][inLength] · W[inLength][outLength] + b).
      *
      * <p><b>Крок 2:</b> Застосування функції активації:
      * <pre>
@@ -97,83 +103,69 @@ public class FullyConnectedLayer extends Layer {
      * </pre>
      * де f^(l) — функція активації шару (ReLU, Sigmoid тощо).
      *
-     * <p><b>Оптимізація:</b> Під час обчислення z пропускаються нульові елементи input[i],
-     * що особливо ефективно після ReLU активації або pooling операцій.
+     * <p><b>Оптимізація:</b> Весь батч обчислюється одним блочним множенням матриць
+     * Z = X · W (див. {@link Gemm}), тому матриця ваг проходиться один раз на батч, а не на кожен приклад.
      *
      * <p><b>Збереження для backpropagation:</b>
      * <ul>
      *   <li>lastX = a^(l-1) — вхідні активації</li>
-     *   <li>lastZ = z^(l) — зважена сума перед активацією</li>
+     *   <li>lastOutput = a^(l) — вихід шару (похідна активації виражається через нього, тому z^(l)
+     *   обчислюється прямо у вихідному буфері і не зберігається)</li>
      * </ul>
      *
-     * @param batchInputs список векторів a^(l-1) — активації попереднього шару для кожного прикладу в батчі
-     * @return список векторів a^(l) — активації поточного шару після застосування f^(l)
+     * @param batchInput тензор a^(l-1) — активації попереднього шару, кожен приклад розглядається як вектор
+     * @return тензор a^(l) [batchSize][1][1][outLength] — активації поточного шару після застосування f^(l)
      */
-    public List<double[]> fullyConnectedForwardPassBatch(List<double[]> batchInputs) {
-        List<double[]> batchOutputs = new ArrayList<>();
-        lastXBatch = new ArrayList<>();
-        lastZBatch = new ArrayList<>();
-
-        for (double[] input : batchInputs) {
-            validateInput(input);
-
-            double[] z = biases.clone();
-
-            for (int i = 0; i < inLength; i++) {
-                double aPrevI = input[i];
-                if (aPrevI != 0.0) {
-                    double[] wRow = weights[i];
-                    for (int j = 0; j < outLength; j++) {
-                        z[j] += wRow[j] * aPrevI;
-                    }
-                }
-            }
-
-            // Збереження a^(l-1) для backpropagation
-            lastXBatch.add(input.clone());
-            lastZBatch.add(z.clone());
-
-            double[] a = applyActivation(z);
-            batchOutputs.add(a);
-        }
-
-        return batchOutputs;
+    @Override
+    public Tensor forward(Tensor batchInput) {
+        // Збереження a^(l-1) та a^(l) для backpropagation (тензори не змінюються до backpropagation, копії не потрібні)
+        lastXBatch = batchInput;
+        lastOutputBatch = workspace.tensor(OUTPUT, batchInput.getBatchSize(), 1, 1, outLength);
+        computeOutput(batchInput, lastOutputBatch);
+        return lastOutputBatch;
     }
 
-    private void validateInput(double[] input) {
-        if (input.length != inLength) {
-            throw new IllegalArgumentException(
-                "Expected input length " + inLength + ", got " + input.length
-            );
-        }
+    @Override
+    public void infer(Tensor batchInput, Tensor output) {
+        computeOutput(batchInput, output);
     }
 
     /**
-     * Застосовує функцію активації f^(l) до кожного елемента вектора z^(l).
-     *
-     * @param z вектор z^(l) — зважена сума
-     * @return вектор a^(l) = f^(l)(z^(l)) — активації після застосування функції
+     * a^(l) = f^(l)(b^(l) + X · W): z^(l) обчислюється прямо у вихідному буфері, активація застосовується на місці.
      */
-    private double[] applyActivation(double[] z) {
-        double[] a = new double[outLength];
-        for (int j = 0; j < outLength; j++) {
-            a[j] = activation.forward(z[j]);
+    private void computeOutput(Tensor batchInput, Tensor output) {
+        validateInput(batchInput, inLength);
+
+        int batchSize = batchInput.getBatchSize();
+        double[] out = output.getData();
+
+        // Z[batchSize][outLength] = b^(l) + X[batchSize][inLength] · W[inLength][outLength]
+        for (int b = 0; b < batchSize; b++) {
+            System.arraycopy(biases, 0, out, b * outLength, outLength);
+        }
+        Gemm.multiply(precision, batchSize, outLength, inLength,
+            batchInput.getData(), 0, inLength,
+            weights, 0, outLength,
+            out, 0, outLength);
+
+        // Лінійна активація злита з GEMM: вихід уже дорівнює z^(l)
+        if (!(activation instanceof Linear)) {
+            BACKEND.activate(activation, out, out, 0, output.getSize());
         }
-        return a;
     }
 
 
     /**
      * Реалізує алгоритм зворотного поширення помилки (backpropagation) через повнозв'язний шар.
-     * Процес складається з чотирьох етапів: обчислення локальної похибки, обчислення градієнта
-     * для попереднього шару, оновлення ваг та оновлення зміщень.
+     * Процес складається з трьох етапів: обчислення локальної похибки, обчислення градієнта
+     * для попереднього шару та градієнтів параметрів (оновлення — в updateParameters).
      *
      * <p><b>Математичні позначення:</b>
      * <ul>
      *   <li>dLda = ∂L/∂a^(l) — градієнт втрат відносно виходу шару (вхідний параметр)</li>
      *   <li>delta = δ^(l) — локальна похибка шару</li>
      *   <li>dLdX = ∂L/∂a^(l-1) — градієнт втрат відносно входу шару</li>
-     *   <li>lastZ = z^(l) — зважена сума перед активацією (збережена з forward pass)</li>
+     *   <li>lastOutput = a^(l) — вихід шару (збережений з forward pass)</li>
      *   <li>lastX = a^(l-1) — активації попереднього шару (збережені з forward pass)</li>
      *   <li>weights = W^(l) — матриця ваг</li>
      *   <li>biases = b^(l) — вектор зміщень</li>
@@ -183,13 +175,15 @@ public class FullyConnectedLayer extends Layer {
      * <pre>
      *   δ^(l) = ∂L/∂a^(l) ⊙ f'(z^(l))
      * </pre>
-     * де ⊙ — поелементне множення (Hadamard product), f' — похідна функції активації.
+     * де ⊙ — поелементне множення (Hadamard product), f' — похідна функції активації,
+     * обчислена через a^(l) = f(z^(l)) (наприклад, σ' = a(1 - a) без повторного e^(-z)).
      * <p>
      *
      * <p><b>ЕТАП 2: Обчислення градієнта для попереднього шару</b>
      * <pre>
      *   ∂L/∂a^(l-1) = (W^(l))^T · δ^(l)
      * </pre>
+     * Для батча це одне множення матриць: ∂L/∂X = Δ · W^T.
      * Цей градієнт передається попередньому шару для продовження backpropagation.
      * <p>
      *
@@ -198,111 +192,120 @@ public class FullyConnectedLayer extends Layer {
      *   ∂L/∂W^(l)_ij = a^(l-1)_i · δ^(l)_j
      *   ∂L/∂b^(l)_j = δ^(l)_j
      * </pre>
-     * <p>
+     * Сума по батчу обчислюється одним множенням матриць: ∂L/∂W = X^T · Δ.
      *
-     * <p><b>ЕТАП 4: Оновлення параметрів методом градієнтного спуску</b>
-     * <pre>
-     *   W^(l) := W^(l) - η · ∂L/∂W^(l)
-     *   b^(l) := b^(l) - η · ∂L/∂b^(l)
-     * </pre>
-     * де η — швидкість навчання (learning rate).
-     *
-     * <p><b>ВАЖЛИВО:</b> Градієнт dLdX обчислюється ДО оновлення ваг, використовуючи
-     * старі значення параметрів. Це критично для коректності backpropagation через весь ланцюг шарів.
+     * <p><b>ВАЖЛИВО:</b> Ваги оновлюються лише після backpropagation через усю мережу, тому dLdX
+     * обчислюється зі старими значеннями параметрів. Це критично для коректності backpropagation
+     * через весь ланцюг шарів.
      *
-     * @param dLdaBatch градієнт функції втрат відносно виходу шару (∂L/∂a^(l))
+     * @param dLdaBatch     градієнт функції втрат відносно виходу шару (∂L/∂a^(l))
+     * @param dLdaPrevBatch тензор за формою входу для ∂L/∂a^(l-1) (null для першого шару)
      */
     @Override
-    public void backPropagationBatch(List<double[]> dLdaBatch) {
-        int batchSize = dLdaBatch.size();
-
-        // Ініціалізація акумуляторів градієнтів
-        double[][] weightsDeltaSum = new double[inLength][outLength];
-        double[] biasesDeltaSum = new double[outLength];
-
-        List<double[]> dLdaPrevBatch = new ArrayList<>();
-
-        // Обробляємо кожен приклад у батчі
+    public void backward(Tensor dLdaBatch, Tensor dLdaPrevBatch) {
+        int batchSize = dLdaBatch.getBatchSize();
+        double[] dLdaData = dLdaBatch.getData();
+        double[] outData = lastOutputBatch.getData();
+
+        // ЕТАП 1: Обчислення локальної похибки для всього батча
+        // δ^(l) = ∂L/∂a^(l) ⊙ f'(z^(l))
+        // Для лінійної активації f' = 1, тому δ^(l) = ∂L/∂a^(l) читається прямо з вхідного тензора без копії
+        double[] delta = dLdaData;
+        if (!(activation instanceof Linear)) {
+            delta = workspace.buffer(DELTA, batchSize * outLength);
+            System.arraycopy(dLdaData, 0, delta, 0, batchSize * outLength);
+            activation.backwardMulFromOutput(outData, 0, delta, 0, batchSize * outLength);
+        }
+        double[] biasesDeltaSum = workspace.zeroed(BIASES_GRADIENT, outLength);
         for (int b = 0; b < batchSize; b++) {
-            double[] dLda = dLdaBatch.get(b);  // градієнт виходу
-            double[] lastX = lastXBatch.get(b);  // вхід
-            double[] lastZ = lastZBatch.get(b);  // z перед активацією
-
-            // ЕТАП 1: Обчислення локальної похибки 
-            // δ^(l) = ∂L/∂a^(l) ⊙ f'(z^(l))
-            double[] delta = new double[outLength];
-            for (int j = 0; j < outLength; j++) {
-                delta[j] = dLda[j] * activation.backward(lastZ[j]);
-            }
-
-            // ЕТАП 2: Обчислення градієнта для попереднього шару 
-            // ∂L/∂a^(l-1) = (W^(l))^T · δ^(l)
-            double[] dLdaPrev = new double[inLength];
-            for (int i = 0; i < inLength; i++) {
-                double sum = 0.0;
-                double[] wRow = weights[i];
-                for (int j = 0; j < outLength; j++) {
-                    sum += wRow[j] * delta[j];
-                }
-                dLdaPrev[i] = sum;
-            }
-
-            // ЕТАП 3: Акумуляція градієнтів параметрів 
-            // ∂L/∂W^(l)_ij = a^(l-1)_i · δ^(l)_j
-            for (int i = 0; i < inLength; i++) {
-                double aPrevI = lastX[i];
-                for (int j = 0; j < outLength; j++) {
-                    double dLdWij = aPrevI * delta[j];
-                    weightsDeltaSum[i][j] += dLdWij;
-                }
-            }
-
             // ∂L/∂b^(l)_j = δ^(l)_j
-            for (int j = 0; j < outLength; j++) {
-                biasesDeltaSum[j] += delta[j];
-            }
+            BACKEND.axpy(1.0, delta, b * outLength, biasesDeltaSum, 0, outLength);
+        }
 
-            dLdaPrevBatch.add(dLdaPrev);
+        // ЕТАП 2: Обчислення градієнта для попереднього шару (для першого шару не потрібен)
+        // ∂L/∂A^(l-1)[batchSize][inLength] = δ^(l) · (W^(l))^T
+        // Градієнт має форму входу шару, щоб попередній шар отримав свої feature maps
+        if (dLdaPrevBatch != null) {
+            Arrays.fill(dLdaPrevBatch.getData(), 0, dLdaPrevBatch.getSize(), 0.0);
+            Gemm.multiplyTransposedB(precision, batchSize, inLength, outLength,
+                delta, 0, outLength,
+                weights, 0, outLength,
+                dLdaPrevBatch.getData(), 0, inLength);
         }
 
-        // ЕТАП 4: Оновлення параметрів (усереднені по батчу) 
-        for (int i = 0; i < inLength; i++) {
-            for (int j = 0; j < outLength; j++) {
-                double grad = weightsDeltaSum[i][j] / batchSize;
-                grad += l2Lambda * weights[i][j];  // L2 регуляризація
-                weights[i][j] -= learningRate * grad;
-            }
+        // ЕТАП 3: Градієнти параметрів, накопичені по батчу
+        // ∂L/∂W^(l)[inLength][outLength] = (A^(l-1))^T · δ^(l)
+        double[] weightsDeltaSum = workspace.zeroed(WEIGHTS_GRADIENT, inLength * outLength);
+        Gemm.multiplyTransposedA(precision, inLength, outLength, batchSize,
+            lastXBatch.getData(), 0, inLength,
+            delta, 0, outLength,
+            weightsDeltaSum, 0, outLength);
+    }
+
+    /**
+     * Оновлення параметрів методом градієнтного спуску (градієнти усереднені по батчу):
+     * <pre>
+     *   W^(l) := W^(l) - η · (∂L/∂W^(l) + λ · W^(l))
+     *   b^(l) := b^(l) - η · ∂L/∂b^(l)
+     * </pre>
+     * де η — швидкість навчання (learning rate), λ — коефіцієнт L2 регуляризації.
+     */
+    @Override
+    public void updateParameters(int batchSize, int from, int to) {
+        double[] weightsDeltaSum = workspace.buffer(WEIGHTS_GRADIENT, weights.length);
+        double[] biasesDeltaSum = workspace.buffer(BIASES_GRADIENT, outLength);
+
+        for (int w = from; w < Math.min(to, weights.length); w++) {
+            double grad = weightsDeltaSum[w] / batchSize;
+            grad += l2Lambda * weights[w];  // L2 регуляризація
+            weights[w] -= learningRate * grad;
         }
 
-        for (int j = 0; j < outLength; j++) {
+        for (int j = Math.max(from, weights.length) - weights.length; j < to - weights.length; j++) {
             biases[j] -= learningRate * (biasesDeltaSum[j] / batchSize);
         }
+    }
 
-        if (previousLayer != null) {
-            previousLayer.backPropagationBatch(dLdaPrevBatch);
-        }
+    @Override
+    public FullyConnectedLayer replicate() {
+        return new FullyConnectedLayer(this);
+    }
+
+    @Override
+    public void addGradients(Layer replica) {
+        FullyConnectedLayer other = (FullyConnectedLayer) replica;
+        BACKEND.axpy(1.0, other.workspace.buffer(WEIGHTS_GRADIENT, weights.length), 0,
+            workspace.buffer(WEIGHTS_GRADIENT, weights.length), 0, weights.length);
+        BACKEND.axpy(1.0, other.workspace.buffer(BIASES_GRADIENT, outLength), 0,
+            workspace.buffer(BIASES_GRADIENT, outLength), 0, outLength);
+    }
+
+    @Override
+    public QuantizedFullyConnected quantize() {
+        return new QuantizedFullyConnected(weights, biases, activation, inLength);
     }
 
 
     private void initWeightsHe() {
         double std = Math.sqrt(2.0 / inLength);
-        for (int i = 0; i < inLength; i++) {
-            for (int j = 0; j < outLength; j++) {
-                weights[i][j] = RANDOM.nextGaussian() * std;
-            }
+        for (int w = 0; w < weights.length; w++) {
+            weights[w] = RANDOM.nextGaussian() * std;
         }
     }
 
     private void initWeightsXavier() {
         double limit = Math.sqrt(6.0 / (inLength + outLength));
-        for (int i = 0; i < inLength; i++) {
-            for (int j = 0; j < outLength; j++) {
-                weights[i][j] = (RANDOM.nextDouble() * 2 - 1) * limit;
-            }
+        for (int w = 0; w < weights.length; w++) {
+            weights[w] = (RANDOM.nextDouble() * 2 - 1) * limit;
         }
     }
 
 
+    @Override
+    public int getInputElements() {
+        return inLength;
+    }
+
     @Override
     public int getOutputLength() {
         return outLength;
@@ -328,6 +331,11 @@ public class FullyConnectedLayer extends Layer {
         return inLength * outLength + outLength;
     }
 
+    @Override
+    public List<double[]> getParameterBlocks() {
+        return List.of(weights, biases);
+    }
+
     @Override
     public String toString() {
         return String.format("🔗 FULLY CONNECTED | Inputs: %d → Outputs: %d | Parameters: %d",
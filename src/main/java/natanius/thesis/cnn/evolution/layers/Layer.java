@@ -1,72 +1,97 @@
 package natanius.thesis.cnn.evolution.layers;
 
-import java.util.ArrayList;
 import java.util.List;
 import lombok.Setter;
+import natanius.thesis.cnn.evolution.data.Tensor;
+import natanius.thesis.cnn.evolution.kernels.GemmPrecision;
+import natanius.thesis.cnn.evolution.quantization.QuantizedLayer;
 
 @Setter
 public abstract class Layer {
 
-    protected Layer nextLayer;
-    protected Layer previousLayer;
+    /**
+     * Точність операндів у множеннях матриць шару (задається NetworkBuilder)
+     */
+    protected GemmPrecision precision = GemmPrecision.DOUBLE;
+
+
+    /**
+     * Forward pass одного шару для батча входів. Вихід записується в буфер workspace шару і разом з
+     * іншим станом для backward залишається дійсним до наступного forward (мережа виконує шари
+     * по черзі, див. ExecutionPlan).
+     * @param batchInput тензор входів [batchSize][channels][rows][cols]
+     * @return вихід шару для батча
+     */
+    public abstract Tensor forward(Tensor batchInput);
 
+    /**
+     * Forward pass лише для передбачення: не зберігає нічого для backpropagation
+     * (зважених сум, позицій максимумів) і записує вихід у наданий тензор.
+     * Буфери проміжних обчислень спільні з forward, тому після цього виклику backward
+     * можливий лише після нового forward.
+     * @param batchInput тензор входів [batchSize][channels][rows][cols]
+     * @param output     тензор для виходу шару (форма — getOutputLength() × getOutputRows() × getOutputCols())
+     */
+    public abstract void infer(Tensor batchInput, Tensor output);
+
+    /**
+     * Backpropagation для батча градієнтів: обчислює градієнти параметрів шару (сума по прикладах батча)
+     * та, якщо dLdXBatch не null, градієнт по входу. Параметри не змінюються — див. updateParameters.
+     * @param dLdOBatch тензор градієнтів за формою виходу шару (після виклику не потрібен шару)
+     * @param dLdXBatch тензор за формою входу, куди записується (повністю перезаписується) градієнт по входу,
+     *                  або null для першого шару мережі
+     */
+    public abstract void backward(Tensor dLdOBatch, Tensor dLdXBatch);
 
     /**
-     * Forward pass для батча входів
-     * @param batchInput список входів для батча, де кожен елемент — List<double[][]> (канали одного зображення)
-     * @return список виходів для батча (List<double[]> або що вимагає конкретний шар)
+     * Крок градієнтного спуску для параметрів з індексами [from, to) у порядку "ваги, потім biases"
+     * (усього getParameterCount()). Діапазони не перетинаються, тому можуть оновлюватися паралельно.
+     * @param batchSize кількість прикладів, по яких накопичено градієнти
      */
-    public abstract List<double[]> getOutputBatch(List<List<double[][]>> batchInput);
+    public abstract void updateParameters(int batchSize, int from, int to);
 
     /**
-     * Backpropagation для батча градієнтів
-     * @param dLdOBatch список градієнтів для батча
+     * Копія шару для паралельного навчання на частині батча: параметри спільні з цим шаром,
+     * а буфери forward/backward та градієнтів — власні.
      */
-    public abstract void backPropagationBatch(List<double[]> dLdOBatch);
+    public abstract Layer replicate();
 
+    /**
+     * Додає градієнти параметрів копії (див. replicate) до градієнтів цього шару
+     */
+    public abstract void addGradients(Layer replica);
+
+    /**
+     * int8 копія шару для inference з поточних параметрів (крок квантизації входу задає калібрування,
+     * див. QuantizedNetwork)
+     */
+    public abstract QuantizedLayer quantize();
+
+    /**
+     * Кількість елементів входу одного прикладу
+     */
+    public abstract int getInputElements();
     public abstract int getOutputLength();
     public abstract int getOutputRows();
     public abstract int getOutputCols();
     public abstract int getOutputElements();
     public abstract int getParameterCount();
 
-
     /**
-     * Конвертує список матриць (канали) у вектор
+     * Масиви параметрів шару в порядку "ваги, потім biases" — ті самі масиви, що змінює updateParameters
+     * (порожній список для шарів без параметрів). Використовується для збереження та завантаження моделі.
      */
-    protected double[] matrixToVector(List<double[][]> input) {
-        if (input.isEmpty()) return new double[0];
-
-        double[][] first = input.getFirst();
-        int rows = first.length;
-        int cols = first[0].length;
-        double[] vector = new double[input.size() * rows * cols];
+    public abstract List<double[]> getParameterBlocks();
 
-        int i = 0;
-        for (double[][] matrix : input) {
-            for (double[] row : matrix) {
-                System.arraycopy(row, 0, vector, i, cols);
-                i += cols;
-            }
-        }
-        return vector;
-    }
 
     /**
-     * Конвертує вектор у список матриць (канали)
+     * Перевіряє, що кількість елементів одного прикладу відповідає очікуваному входу шару
      */
-    protected List<double[][]> vectorToMatrix(double[] input, int length, int rows, int cols) {
-        List<double[][]> out = new ArrayList<>(length);
-        int i = 0;
-        for (int l = 0; l < length; l++) {
-            double[][] matrix = new double[rows][];
-            for (int r = 0; r < rows; r++) {
-                matrix[r] = new double[cols];
-                System.arraycopy(input, i, matrix[r], 0, cols);
-                i += cols;
-            }
-            out.add(matrix);
+    protected void validateInput(Tensor input, int expectedElements) {
+        if (input.getSampleStride() != expectedElements) {
+            throw new IllegalArgumentException(
+                "Expected " + expectedElements + " input elements per sample, got " + input.getSampleStride()
+            );
         }
-        return out;
     }
 }
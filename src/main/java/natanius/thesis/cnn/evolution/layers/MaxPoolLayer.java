@@ -1,119 +1,195 @@
 package natanius.thesis.cnn.evolution.layers;
 
-import java.util.ArrayList;
+import static natanius.thesis.cnn.evolution.kernels.Kernels.BACKEND;
+
+import java.util.Arrays;
 import java.util.List;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import natanius.thesis.cnn.evolution.data.Tensor;
+import natanius.thesis.cnn.evolution.data.Workspace;
+import natanius.thesis.cnn.evolution.quantization.QuantizedMaxPool;
 
 @RequiredArgsConstructor
 public class MaxPoolLayer extends Layer {
 
+    @Getter
     private final int stepSize;
+    @Getter
     private final int windowSize;
     private final int inLength;
+    @Getter
     private final int inRows;
+    @Getter
     private final int inCols;
 
-    private List<List<int[][]>> lastMaxRowBatch;
-    private List<List<int[][]>> lastMaxColBatch;
-
-
-    @Override
-    public List<double[]> getOutputBatch(List<List<double[][]>> batchInput) {
-        List<List<double[][]>> pooledOutput = maxPoolForwardPassBatch(batchInput);
+    /**
+     * Позиція максимуму для кожної клітинки виходу — індекс у вхідному буфері батча (-1, якщо максимуму немає)
+     */
+    private int[] lastArgmaxBatch;
 
-        // Конвертуємо в вектори для наступного шару
-        List<double[]> batchVectors = new ArrayList<>();
-        for (List<double[][]> featureMaps : pooledOutput) {
-            batchVectors.add(matrixToVector(featureMaps));
-        }
+    // Слоти буферів, що повторно використовуються між батчами
+    private static final int OUTPUT = 0;
+    private static final int ARGMAX = 1;
+    private final Workspace workspace = new Workspace(2);
 
-        // Передаємо наступному шару, якщо є
-        if (nextLayer != null) {
-            return nextLayer.getOutputBatch(pooledOutput);
-        }
-        return batchVectors;
-    }
 
     /**
      * Виконує forward pass max pooling для батча вхідних feature maps.
      * <p>
      * Max pooling зменшує просторові розміри, зберігаючи найважливіші ознаки.
-     * Для кожного вікна розміром windowSize×windowSize обирається максимальне значення.
+     * Для кожного вікна розміром windowSize×windowSize обирається максимальне значення
+     * (за рівних значень — перше в порядку рядків).
      * <p>
-     * <b>Важливо:</b> Зберігаються позиції максимумів для backpropagation.
+     * <b>Важливо:</b> Зберігаються позиції максимумів для backpropagation
+     * (по одному індексу вхідного буфера на кожну клітинку виходу, у тій самій розкладці NCHW, що й вихід).
      *
-     * @param batchInputs список вхідних feature maps [batchSize][inLength][inRows][inCols]
-     * @return список вихідних feature maps [batchSize][inLength][outRows][outCols]
+     * @param batchInput тензор вхідних feature maps [batchSize][inLength][inRows][inCols]
+     * @return тензор вихідних feature maps [batchSize][inLength][outRows][outCols]
      */
-    public List<List<double[][]>> maxPoolForwardPassBatch(List<List<double[][]>> batchInputs) {
-        List<List<double[][]>> batchOutputs = new ArrayList<>();
-        lastMaxRowBatch = new ArrayList<>();
-        lastMaxColBatch = new ArrayList<>();
-
-        for (List<double[][]> input : batchInputs) {
-            List<double[][]> channelOutputs = new ArrayList<>();
-            List<int[][]> channelMaxRows = new ArrayList<>();
-            List<int[][]> channelMaxCols = new ArrayList<>();
-
-            // Pooling для кожного каналу
-            for (double[][] channel : input) {
-                double[][] pooledChannel = new double[getOutputRows()][getOutputCols()];
-                int[][] maxRows = new int[getOutputRows()][getOutputCols()];
-                int[][] maxCols = new int[getOutputRows()][getOutputCols()];
-
-                // Процес pooling
-                for (int r = 0; r < getOutputRows(); r++) {
-                    for (int c = 0; c < getOutputCols(); c++) {
-                        double max = Double.NEGATIVE_INFINITY;
-                        int maxRowIdx = -1;
-                        int maxColIdx = -1;
-
-                        int startRow = r * stepSize;
-                        int startCol = c * stepSize;
-
-                        // Шукаємо максимум у вікні
-                        for (int x = 0; x < windowSize; x++) {
-                            for (int y = 0; y < windowSize; y++) {
-                                double value = channel[startRow + x][startCol + y];
-                                if (value > max) {
-                                    max = value;
-                                    maxRowIdx = startRow + x;
-                                    maxColIdx = startCol + y;
-                                }
-                            }
-                        }
+    @Override
+    public Tensor forward(Tensor batchInput) {
+        validateInput(batchInput, inLength * inRows * inCols);
 
-                        pooledChannel[r][c] = max;
-                        maxRows[r][c] = maxRowIdx;
-                        maxCols[r][c] = maxColIdx;
-                    }
-                }
+        Tensor output = workspace.tensor(OUTPUT, batchInput.getBatchSize(), inLength, getOutputRows(), getOutputCols());
+        lastArgmaxBatch = workspace.intBuffer(ARGMAX, output.getSize());
+        pool(batchInput, output, lastArgmaxBatch);
+        return output;
+    }
 
-                channelOutputs.add(pooledChannel);
-                channelMaxRows.add(maxRows);
-                channelMaxCols.add(maxCols);
-            }
 
-            batchOutputs.add(channelOutputs);
-            lastMaxRowBatch.add(channelMaxRows);
-            lastMaxColBatch.add(channelMaxCols);
-        }
+    /**
+     * Max pooling без збереження позицій максимумів (лише для передбачення).
+     */
+    @Override
+    public void infer(Tensor batchInput, Tensor output) {
+        validateInput(batchInput, inLength * inRows * inCols);
+        pool(batchInput, output, null);
+    }
 
-        return batchOutputs;
+    /**
+     * Обирає ядро за розміром вікна: для вікон 2×2 та 3×3 (єдиних, які генерує генетичний алгоритм)
+     * порівняння розгорнуті, решта обробляється загальним циклом.
+     */
+    private void pool(Tensor batchInput, Tensor output, int[] argmax) {
+        double[] in = batchInput.getData();
+        double[] out = output.getData();
+        int maps = batchInput.getBatchSize() * inLength;
+        switch (windowSize) {
+            case 2 -> pool2x2(in, out, argmax, maps);
+            case 3 -> pool3x3(in, out, argmax, maps);
+            default -> poolGeneric(in, out, argmax, maps);
+        }
     }
 
+    private void pool2x2(double[] in, double[] out, int[] argmax, int maps) {
+        int outRows = getOutputRows();
+        int outCols = getOutputCols();
+        int outIndex = 0;
+        for (int map = 0; map < maps; map++) {
+            int mapBase = map * inRows * inCols;
+            for (int r = 0; r < outRows; r++) {
+                int rowBase = mapBase + r * stepSize * inCols;
+                for (int c = 0; c < outCols; c++, outIndex++) {
+                    int top = rowBase + c * stepSize;
+                    int bottom = top + inCols;
+                    double max = Double.NEGATIVE_INFINITY;
+                    int maxIndex = -1;
+                    if (in[top] > max) {
+                        max = in[top];
+                        maxIndex = top;
+                    }
+                    if (in[top + 1] > max) {
+                        max = in[top + 1];
+                        maxIndex = top + 1;
+                    }
+                    if (in[bottom] > max) {
+                        max = in[bottom];
+                        maxIndex = bottom;
+                    }
+                    if (in[bottom + 1] > max) {
+                        max = in[bottom + 1];
+                        maxIndex = bottom + 1;
+                    }
+                    out[outIndex] = max;
+                    if (argmax != null) {
+                        argmax[outIndex] = maxIndex;
+                    }
+                }
+            }
+        }
+    }
 
-    @Override
-    public void backPropagationBatch(List<double[]> dLdOBatch) {
-        // Конвертуємо вектори назад у feature maps
-        List<List<double[][]>> dLdOFeatureMapsBatch = new ArrayList<>();
-        for (double[] vec : dLdOBatch) {
-            dLdOFeatureMapsBatch.add(vectorToMatrix(vec, getOutputLength(), getOutputRows(), getOutputCols()));
+    private void pool3x3(double[] in, double[] out, int[] argmax, int maps) {
+        int outRows = getOutputRows();
+        int outCols = getOutputCols();
+        int outIndex = 0;
+        for (int map = 0; map < maps; map++) {
+            int mapBase = map * inRows * inCols;
+            for (int r = 0; r < outRows; r++) {
+                int rowBase = mapBase + r * stepSize * inCols;
+                for (int c = 0; c < outCols; c++, outIndex++) {
+                    double max = Double.NEGATIVE_INFINITY;
+                    int maxIndex = -1;
+                    for (int x = 0, i = rowBase + c * stepSize; x < 3; x++, i += inCols) {
+                        if (in[i] > max) {
+                            max = in[i];
+                            maxIndex = i;
+                        }
+                        if (in[i + 1] > max) {
+                            max = in[i + 1];
+                            maxIndex = i + 1;
+                        }
+                        if (in[i + 2] > max) {
+                            max = in[i + 2];
+                            maxIndex = i + 2;
+                        }
+                    }
+                    out[outIndex] = max;
+                    if (argmax != null) {
+                        argmax[outIndex] = maxIndex;
+                    }
+                }
+            }
         }
+    }
 
-        backPropagationBatchInternal(dLdOFeatureMapsBatch);
+    private void poolGeneric(double[] in, double[] out, int[] argmax, int maps) {
+        int outRows = getOutputRows();
+        int outCols = getOutputCols();
+        int outIndex = 0;
+        for (int map = 0; map < maps; map++) {
+            int mapBase = map * inRows * inCols;
+            for (int r = 0; r < outRows; r++) {
+                for (int c = 0; c < outCols; c++, outIndex++) {
+                    int windowBase = mapBase + r * stepSize * inCols + c * stepSize;
+                    // Максимум кожного рядка вікна через BACKEND.max, потім перший стовпець з цим значенням
+                    // у першому рядку-переможці — та сама позиція, що й при послідовному перегляді вікна
+                    double max = Double.NEGATIVE_INFINITY;
+                    int maxRowBase = -1;
+                    for (int x = 0; x < windowSize; x++) {
+                        double rowMax = BACKEND.max(in, windowBase + x * inCols, windowSize);
+                        if (rowMax > max) {
+                            max = rowMax;
+                            maxRowBase = windowBase + x * inCols;
+                        }
+                    }
+                    out[outIndex] = max;
+                    if (argmax != null) {
+                        int maxIndex = maxRowBase;
+                        if (maxIndex != -1) {
+                            while (in[maxIndex] != max) {
+                                maxIndex++;
+                            }
+                        }
+                        argmax[outIndex] = maxIndex;
+                    }
+                }
+            }
+        }
     }
 
+
     /**
      * Виконує backpropagation через max pooling шар для батча градієнтів.
      * <p>
@@ -126,58 +202,61 @@ public class MaxPoolLayer extends Layer {
      * ∂L/∂x[i][j] = ∂L/∂y[r][c], якщо x[i][j] був максимумом у вікні (r,c)
      * ∂L/∂x[i][j] = 0, інакше
      * </pre>
+     * Позиції максимумів — індекси вхідного буфера, тому градієнт розноситься одним проходом по виходу.
      *
-     * @param dLdOBatch список градієнтів виходу [batchSize][inLength][outRows][outCols]
+     * @param dLdOBatch тензор градієнтів виходу [batchSize][inLength][outRows][outCols]
+     * @param dLdXBatch тензор градієнтів входу [batchSize][inLength][inRows][inCols] (null для першого шару)
      */
-    private void backPropagationBatchInternal(List<List<double[][]>> dLdOBatch) {
-        int batchSize = dLdOBatch.size();
-        List<List<double[][]>> dLdOPrevBatch = new ArrayList<>();
-
-        for (int b = 0; b < batchSize; b++) {
-            List<double[][]> dLdO = dLdOBatch.get(b);  // список градієнтів по каналах
-            List<int[][]> maxRows = lastMaxRowBatch.get(b);
-            List<int[][]> maxCols = lastMaxColBatch.get(b);
-
-            List<double[][]> dLdXChannels = new ArrayList<>();
-
-            // Обробляємо кожен канал
-            for (int c = 0; c < inLength; c++) {
-                double[][] gradOutput = dLdO.get(c);  // градієнт для цього каналу
-                int[][] maxRowIdx = maxRows.get(c);
-                int[][] maxColIdx = maxCols.get(c);
-
-                // Відновлюємо градієнт до pooling
-                double[][] gradInput = new double[inRows][inCols];
-
-                for (int r = 0; r < getOutputRows(); r++) {
-                    for (int col = 0; col < getOutputCols(); col++) {
-                        int maxI = maxRowIdx[r][col];
-                        int maxJ = maxColIdx[r][col];
-
-                        // Помилка передається тільки в позицію максимуму
-                        if (maxI != -1 && maxJ != -1) {
-                            gradInput[maxI][maxJ] += gradOutput[r][col];
-                        }
-                    }
-                }
-
-                dLdXChannels.add(gradInput);
-            }
-
-            dLdOPrevBatch.add(dLdXChannels);
+    @Override
+    public void backward(Tensor dLdOBatch, Tensor dLdXBatch) {
+        // Параметрів немає, тому першому шару нічого обчислювати
+        if (dLdXBatch == null) {
+            return;
         }
 
-        // Передаємо батч градієнтів попередньому шару
-        if (previousLayer != null) {
-            List<double[]> dLdOPrevVectors = new ArrayList<>();
-            for (List<double[][]> featureMaps : dLdOPrevBatch) {
-                dLdOPrevVectors.add(matrixToVector(featureMaps));
+        // Відновлюємо градієнт до pooling
+        double[] gradOutput = dLdOBatch.getData();
+        double[] gradInput = dLdXBatch.getData();
+        Arrays.fill(gradInput, 0, dLdXBatch.getSize(), 0.0);
+
+        for (int k = 0; k < dLdOBatch.getSize(); k++) {
+            int maxIndex = lastArgmaxBatch[k];
+            // Помилка передається тільки в позицію максимуму
+            if (maxIndex != -1) {
+                gradInput[maxIndex] += gradOutput[k];
             }
-            previousLayer.backPropagationBatch(dLdOPrevVectors);
         }
     }
 
 
+    @Override
+    public void updateParameters(int batchSize, int from, int to) {
+        // Немає параметрів для навчання в pooling
+    }
+
+    @Override
+    public MaxPoolLayer replicate() {
+        MaxPoolLayer replica = new MaxPoolLayer(stepSize, windowSize, inLength, inRows, inCols);
+        replica.setPrecision(precision);
+        return replica;
+    }
+
+    @Override
+    public void addGradients(Layer replica) {
+        // Немає градієнтів параметрів
+    }
+
+    @Override
+    public QuantizedMaxPool quantize() {
+        return new QuantizedMaxPool(stepSize, windowSize, inLength, inRows, inCols);
+    }
+
+
+    @Override
+    public int getInputElements() {
+        return inLength * inRows * inCols;
+    }
+
     @Override
     public int getOutputLength() {
         return inLength;  // Кількість каналів не змінюється
@@ -203,6 +282,11 @@ public class MaxPoolLayer extends Layer {
         return 0;  // Немає параметрів для навчання в pooling
     }
 
+    @Override
+    public List<double[]> getParameterBlocks() {
+        return List.of();
+    }
+
     @Override
     public String toString() {
         return String.format("🔄 MAX POOL | Window: %dx%d | Stride: %d | Input: %dx%d | Output: %dx%d",
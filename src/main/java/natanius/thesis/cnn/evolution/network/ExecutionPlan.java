@@ -0,0 +1,204 @@
+package natanius.thesis.cnn.evolution.network;
+
+import static natanius.thesis.cnn.evolution.data.Constants.INPUT_COLS;
+import static natanius.thesis.cnn.evolution.data.Constants.INPUT_ROWS;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Getter;
+import lombok.Setter;
+import natanius.thesis.cnn.evolution.data.Tensor;
+import natanius.thesis.cnn.evolution.data.Workspace;
+import natanius.thesis.cnn.evolution.layers.Layer;
+
+/**
+ * Статичний план виконання ланцюга шарів, що компілюється один раз при створенні мережі.
+ *
+ * <p><b>Компіляція:</b> форми входу та виходу кожного кроку виводяться наперед, тому невідповідність
+ * сусідніх шарів виявляється під час побудови мережі, а не на першому батчі.
+ *
+ * <p><b>Виконання:</b> forward, inference та backward — плоскі цикли по кроках (без рекурсії між шарами).
+ *
+ * <p><b>Буфери за часом життя:</b>
+ * <ul>
+ *   <li>виходи forward потрібні до кінця backward, тому їх зберігають самі шари;</li>
+ *   <li>градієнт виходу кроку i потрібен лише під час backward кроку i, тож градієнти всіх кроків
+ *       займають два буфери: крок i читає буфер i mod 2 і записує градієнт входу в (i - 1) mod 2;</li>
+ *   <li>так само виходи inference займають два буфери на всю мережу.</li>
+ * </ul>
+ * Розміри буферів — максимум по кроках тієї самої парності, тому після першого батча план нічого не виділяє.
+ *
+ * <p>Для профілювання можна задати {@link StepListener}: він отримує час кожного кроку кожної фази.
+ */
+public class ExecutionPlan {
+
+    /**
+     * Фаза, у якій виконується крок плану
+     */
+    public enum Phase {
+        FORWARD,
+        INFERENCE,
+        BACKWARD
+    }
+
+    /**
+     * Спостерігач часу кроків. У data parallelism викликається з кількох потоків одночасно.
+     */
+    @FunctionalInterface
+    public interface StepListener {
+        void onStep(Phase phase, int step, Layer layer, long nanos);
+    }
+
+    /**
+     * Форма одного прикладу на межі кроків
+     */
+    public record Shape(int channels, int rows, int cols) {
+        public int elements() {
+            return channels * rows * cols;
+        }
+    }
+
+    @Getter
+    private final List<Layer> layers;
+    /**
+     * shapes[i] — вхід кроку i, shapes[layers.size()] — вихід мережі
+     */
+    @Getter
+    private final List<Shape> shapes;
+    private final int[] maxGradientElements = new int[2];
+    private final int[] maxActivationElements = new int[2];
+    @Setter
+    private StepListener stepListener;
+
+    // Слоти буферів плану; тензори кожного кроку кешуються в окремих слотах над спільними буферами
+    private static final int INPUT = 0;
+    private static final int GRADIENT = 1;    // + парність кроку
+    private static final int ACTIVATION = 3;  // + парність кроку
+    private static final int VIEWS = 5;
+    private final Workspace workspace;
+
+    private ExecutionPlan(List<Layer> layers, List<Shape> shapes) {
+        this.layers = layers;
+        this.shapes = shapes;
+        for (int i = 0; i < layers.size(); i++) {
+            int elements = shapes.get(i + 1).elements();
+            maxGradientElements[i % 2] = Math.max(maxGradientElements[i % 2], elements);
+            maxActivationElements[i % 2] = Math.max(maxActivationElements[i % 2], elements);
+        }
+        this.workspace = new Workspace(VIEWS + 2 * layers.size());
+    }
+
+    /**
+     * Виводить форми всіх кроків і перевіряє, що кожен шар приймає вихід попереднього.
+     */
+    public static ExecutionPlan compile(List<Layer> layers) {
+        if (layers.isEmpty()) {
+            throw new IllegalStateException("Cannot compile execution plan: no layers");
+        }
+
+        List<Shape> shapes = new ArrayList<>();
+        shapes.add(new Shape(1, INPUT_ROWS, INPUT_COLS));
+        for (int i = 0; i < layers.size(); i++) {
+            Layer layer = layers.get(i);
+            Shape input = shapes.getLast();
+            if (layer.getInputElements() != input.elements()) {
+                throw new IllegalStateException("Layer " + i + " expects " + layer.getInputElements()
+                    + " input elements, previous step produces " + input.elements() + ": " + layer);
+            }
+            // Повнозв'язний шар звітує outLength і як кількість каналів, і як ширину, тому канали
+            // виводяться з кількості елементів
+            int rows = layer.getOutputRows();
+            int cols = layer.getOutputCols();
+            shapes.add(new Shape(layer.getOutputElements() / (rows * cols), rows, cols));
+        }
+        return new ExecutionPlan(layers, shapes);
+    }
+
+    /**
+     * Тензор входу плану для batchSize прикладів (вміст довільний)
+     */
+    public Tensor input(int batchSize) {
+        Shape shape = shapes.getFirst();
+        return workspace.tensor(INPUT, batchSize, shape.channels(), shape.rows(), shape.cols());
+    }
+
+    /**
+     * Forward pass з урахуванням стану для backward
+     *
+     * @return вихід останнього кроку (буфер шару)
+     */
+    public Tensor forward(Tensor input) {
+        Tensor x = input;
+        for (int i = 0; i < layers.size(); i++) {
+            long start = startStep();
+            x = layers.get(i).forward(x);
+            finishStep(Phase.FORWARD, i, start);
+        }
+        return x;
+    }
+
+    /**
+     * Forward pass лише для передбачення
+     *
+     * @return вихід останнього кроку (буфер плану, перезаписується наступним викликом)
+     */
+    public Tensor infer(Tensor input) {
+        int batchSize = input.getBatchSize();
+        Tensor x = input;
+        for (int i = 0; i < layers.size(); i++) {
+            Shape shape = shapes.get(i + 1);
+            Tensor output = workspace.view(VIEWS + layers.size() + i, ACTIVATION + i % 2,
+                batchSize * maxActivationElements[i % 2], batchSize, shape.channels(), shape.rows(), shape.cols());
+
+            long start = startStep();
+            layers.get(i).infer(x, output);
+            finishStep(Phase.INFERENCE, i, start);
+            x = output;
+        }
+        return x;
+    }
+
+    /**
+     * Тензор для ∂L/∂Output останнього кроку (заповнює функція втрат перед backward)
+     */
+    public Tensor outputGradient(int batchSize) {
+        return gradient(layers.size() - 1, batchSize);
+    }
+
+    /**
+     * Backpropagation у зворотному порядку кроків; перший крок не обчислює градієнт по входу.
+     *
+     * @param outputGradient ∂L/∂Output з {@link #outputGradient}
+     */
+    public void backward(Tensor outputGradient) {
+        int batchSize = outputGradient.getBatchSize();
+        Tensor dLdO = outputGradient;
+        for (int i = layers.size() - 1; i >= 0; i--) {
+            Tensor dLdX = i > 0 ? gradient(i - 1, batchSize) : null;
+
+            long start = startStep();
+            layers.get(i).backward(dLdO, dLdX);
+            finishStep(Phase.BACKWARD, i, start);
+            dLdO = dLdX;
+        }
+    }
+
+    /**
+     * Тензор градієнта виходу кроку step у буфері його парності
+     */
+    private Tensor gradient(int step, int batchSize) {
+        Shape shape = shapes.get(step + 1);
+        return workspace.view(VIEWS + step, GRADIENT + step % 2,
+            batchSize * maxGradientElements[step % 2], batchSize, shape.channels(), shape.rows(), shape.cols());
+    }
+
+    private long startStep() {
+        return stepListener != null ? System.nanoTime() : 0L;
+    }
+
+    private void finishStep(Phase phase, int step, long start) {
+        if (stepListener != null) {
+            stepListener.onStep(phase, step, layers.get(step), System.nanoTime() - start);
+        }
+    }
+}
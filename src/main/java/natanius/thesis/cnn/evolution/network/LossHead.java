@@ -0,0 +1,109 @@
+package natanius.thesis.cnn.evolution.network;
+
+import static lombok.AccessLevel.PRIVATE;
+
+import java.util.List;
+import lombok.NoArgsConstructor;
+import natanius.thesis.cnn.evolution.data.Image;
+import natanius.thesis.cnn.evolution.data.Tensor;
+
+/**
+ * Злиті Softmax + Cross-Entropy для всього батча: logits читаються прямо з неперервного буфера
+ * виходу мережі, проміжні ймовірності та one-hot вектори не створюються.
+ *
+ * <p>Для кожного прикладу з logits z (m = max z, S = Σ e^(z_i - m)):
+ * <pre>
+ *   log p_i = z_i - m - log S              (стабільний log-softmax)
+ *   L       = -log p_label = log S - (z_label - m)
+ *   ∂L/∂z_i = p_i - [i = label]
+ * </pre>
+ * Передбачений клас — argmax z (softmax монотонний, тому експоненти для нього не потрібні).
+ */
+@NoArgsConstructor(access = PRIVATE)
+final class LossHead {
+
+    /**
+     * Loss та градієнт по logits для батча.
+     *
+     * @param logits   вихід мережі [batchSize][classes]
+     * @param images   набір, з якого взяті приклади батча (для міток)
+     * @param start    індекс першого прикладу батча в images
+     * @param gradient тензор тієї ж форми, що й logits, куди записується ∂L/∂z
+     * @return сумарний loss батча
+     */
+    static double crossEntropy(Tensor logits, List<Image> images, int start, Tensor gradient) {
+        double[] z = logits.getData();
+        double[] dz = gradient.getData();
+        int classes = logits.getSampleStride();
+        double loss = 0.0;
+
+        for (int n = 0; n < logits.getBatchSize(); n++) {
+            int offset = n * classes;
+            int label = images.get(start + n).label();
+            double max = z[offset + argmax(z, offset, classes)];
+
+            // e^(z_i - m) тимчасово зберігаються в буфері градієнта
+            double sum = 0.0;
+            for (int i = offset; i < offset + classes; i++) {
+                dz[i] = Math.exp(z[i] - max);
+                sum += dz[i];
+            }
+            for (int i = offset; i < offset + classes; i++) {
+                dz[i] /= sum;
+            }
+            dz[offset + label] -= 1.0;
+
+            loss += Math.log(sum) - (z[offset + label] - max);
+        }
+        return loss;
+    }
+
+    /**
+     * Кількість прикладів батча, для яких argmax logits збігається з міткою.
+     */
+    static int countCorrect(Tensor logits, List<Image> images, int start) {
+        double[] z = logits.getData();
+        int classes = logits.getSampleStride();
+        int correct = 0;
+        for (int n = 0; n < logits.getBatchSize(); n++) {
+            if (argmax(z, n * classes, classes) == images.get(start + n).label()) {
+                correct++;
+            }
+        }
+        return correct;
+    }
+
+    /**
+     * Індекс першого максимального значення серед length елементів, починаючи з offset.
+     */
+    static int argmax(double[] values, int offset, int length) {
+        int index = 0;
+        double max = values[offset];
+        for (int i = 1; i < length; i++) {
+            if (values[offset + i] > max) {
+                max = values[offset + i];
+                index = i;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Ймовірності Softmax для logits одного прикладу.
+     *
+     * @return новий вектор ймовірностей (сума = 1.0)
+     */
+    static double[] softmax(double[] logits, int offset, int length) {
+        double max = logits[offset + argmax(logits, offset, length)];
+        double[] probabilities = new double[length];
+        double sum = 0.0;
+        for (int i = 0; i < length; i++) {
+            probabilities[i] = Math.exp(logits[offset + i] - max);
+            sum += probabilities[i];
+        }
+        for (int i = 0; i < length; i++) {
+            probabilities[i] /= sum;
+        }
+        return probabilities;
+    }
+}
@@ -6,7 +6,9 @@ import static natanius.thesis.cnn.evolution.data.Constants.INPUT_ROWS;
 import java.util.ArrayList;
 import java.util.List;
 import natanius.thesis.cnn.evolution.activation.Activation;
+import natanius.thesis.cnn.evolution.kernels.GemmPrecision;
 import natanius.thesis.cnn.evolution.layers.ConvolutionLayer;
+import natanius.thesis.cnn.evolution.layers.ConvolutionPoolLayer;
 import natanius.thesis.cnn.evolution.layers.FullyConnectedLayer;
 import natanius.thesis.cnn.evolution.layers.Layer;
 import natanius.thesis.cnn.evolution.layers.MaxPoolLayer;
@@ -14,6 +16,17 @@ import natanius.thesis.cnn.evolution.layers.MaxPoolLayer;
 public class NetworkBuilder {
 
     private final List<Layer> layers = new ArrayList<>();
+    private GemmPrecision precision = GemmPrecision.DOUBLE;
+
+
+    /**
+     * Точність операндів GEMM для всіх шарів мережі (за замовчуванням {@link GemmPrecision#DOUBLE});
+     * параметри та активації мережі залишаються в double
+     */
+    public NetworkBuilder withGemmPrecision(GemmPrecision precision) {
+        this.precision = precision;
+        return this;
+    }
 
 
     public NetworkBuilder addConvolutionLayer(int numFilters, int filterSize, int stepSize, double learningRate, Activation activation, int padding) {
@@ -101,7 +114,67 @@ public class NetworkBuilder {
                 throw new IllegalStateException("Layer has invalid output size: " + layer);
             }
         }
-        return new NeuralNetwork(layers);
+
+        // Проходи переписування графа: кожен зберігає виходи мережі та форми наступних шарів
+        List<Layer> fusedLayers = fuseConvolutionPool(mergePools(removeIdentityPools(layers)));
+        for (Layer layer : fusedLayers) {
+            layer.setPrecision(precision);
+        }
+        return new NeuralNetwork(fusedLayers);
+    }
+
+    /**
+     * Видаляє MaxPool з вікном 1×1 та кроком 1: вихід такого шару дорівнює входу.
+     * Єдиний шар мережі залишається, щоб мережа не стала порожньою.
+     */
+    private static List<Layer> removeIdentityPools(List<Layer> layers) {
+        List<Layer> kept = new ArrayList<>();
+        for (Layer layer : layers) {
+            if (!(layer instanceof MaxPoolLayer pool && pool.getWindowSize() == 1 && pool.getStepSize() == 1)) {
+                kept.add(layer);
+            }
+        }
+        return kept.isEmpty() ? layers : kept;
+    }
+
+    /**
+     * Об'єднує MaxPool з кроком 1 з наступним MaxPool в один шар. Максимум по вікнах a×a з кроком 1,
+     * узятий по вікну b×b з кроком s, — це максимум по вікну (a + b - 1)×(a + b - 1) з кроком s,
+     * а розмір виходу не змінюється:
+     * <pre>
+     *   ((R - a + 1) - b) / s + 1 = (R - (a + b - 1)) / s + 1
+     * </pre>
+     * Виходи збігаються точно; за рівних максимумів градієнт може піти в іншу з рівних позицій.
+     */
+    private static List<Layer> mergePools(List<Layer> layers) {
+        List<Layer> merged = new ArrayList<>();
+        for (Layer layer : layers) {
+            if (layer instanceof MaxPoolLayer pool && !merged.isEmpty()
+                && merged.getLast() instanceof MaxPoolLayer previous && previous.getStepSize() == 1) {
+                merged.set(merged.size() - 1, new MaxPoolLayer(pool.getStepSize(),
+                    previous.getWindowSize() + pool.getWindowSize() - 1,
+                    previous.getOutputLength(), previous.getInRows(), previous.getInCols()));
+            } else {
+                merged.add(layer);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Замінює кожну пару Convolution → MaxPool одним {@link ConvolutionPoolLayer},
+     * який обчислює pooling без запису повних карт згортки в пам'ять.
+     */
+    private static List<Layer> fuseConvolutionPool(List<Layer> layers) {
+        List<Layer> fused = new ArrayList<>();
+        for (Layer layer : layers) {
+            if (layer instanceof MaxPoolLayer pool && !fused.isEmpty() && fused.getLast() instanceof ConvolutionLayer convolution) {
+                fused.set(fused.size() - 1, new ConvolutionPoolLayer(convolution, pool.getWindowSize(), pool.getStepSize()));
+            } else {
+                fused.add(layer);
+            }
+        }
+        return fused;
     }
 
 }
@@ -1,12 +1,19 @@
 package natanius.thesis.cnn.evolution.network;
 
+import static natanius.thesis.cnn.evolution.data.Constants.INPUT_COLS;
+import static natanius.thesis.cnn.evolution.data.Constants.INPUT_ROWS;
+
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.IntStream;
 import lombok.Getter;
 import natanius.thesis.cnn.evolution.data.Image;
+import natanius.thesis.cnn.evolution.data.Tensor;
+import natanius.thesis.cnn.evolution.data.Workspace;
 import natanius.thesis.cnn.evolution.layers.ConvolutionLayer;
+import natanius.thesis.cnn.evolution.layers.ConvolutionPoolLayer;
 import natanius.thesis.cnn.evolution.layers.FullyConnectedLayer;
 import natanius.thesis.cnn.evolution.layers.Layer;
 import natanius.thesis.cnn.evolution.layers.MaxPoolLayer;
@@ -22,95 +29,33 @@ public class NeuralNetwork {
     private static final String MAGENTA = "\u001B[35m";  // Fully Connected
     private static final String YELLOW = "\u001B[33m";   // Stats
 
+    // Плани виконання копій шарів для data parallelism; план 0 виконує самі шари мережі
+    private static final int UPDATE_CHUNK = 1 << 14;
+    private final List<ExecutionPlan> plans = new ArrayList<>();
+
     public NeuralNetwork(List<Layer> layers) {
         this.layers = layers;
-        linkLayers();
-    }
-
-    public void linkLayers() {
-        if (layers.size() <= 1) {
-            return;
-        }
-
-        for (int i = 0; i < layers.size(); i++) {
-            if (i == 0) {
-                layers.get(i).setNextLayer(layers.get(i + 1));
-            } else if (i == layers.size() - 1) {
-                layers.get(i).setPreviousLayer(layers.get(i - 1));
-            } else {
-                layers.get(i).setPreviousLayer(layers.get(i - 1));
-                layers.get(i).setNextLayer(layers.get(i + 1));
-            }
-        }
+        plans.add(ExecutionPlan.compile(layers));
     }
 
     /**
-     * Застосовує Softmax до вектора logits для отримання ймовірностей.
-     *
-     * @param logits вихідні значення з останнього шару
-     * @return вектор ймовірностей (сума = 1.0)
+     * Спостерігач часу кроків для всіх планів мережі (null — вимкнути вимірювання)
      */
-    private double[] applySoftmax(double[] logits) {
-        // Для числової стабільності віднімаємо максимум
-        double max = logits[0];
-        for (int i = 1; i < logits.length; i++) {
-            if (logits[i] > max) max = logits[i];
-        }
-
-        double[] exp = new double[logits.length];
-        double sum = 0.0;
-
-        for (int i = 0; i < logits.length; i++) {
-            exp[i] = Math.exp(logits[i] - max);
-            sum += exp[i];
-        }
-
-        for (int i = 0; i < logits.length; i++) {
-            exp[i] /= sum;
+    public void setStepListener(ExecutionPlan.StepListener listener) {
+        for (ExecutionPlan plan : plans) {
+            plan.setStepListener(listener);
         }
-
-        return exp;
     }
 
     /**
-     * Обчислює градієнт Cross-Entropy Loss з Softmax.
-     * Для Softmax + Cross-Entropy градієнт спрощується до: output - target
-     *
-     * @param networkOutput вихід мережі після Softmax (ймовірності)
-     * @param correctAnswer правильна мітка класу (0-9)
-     * @return градієнт loss function
+     * Inference forward для size зображень, починаючи з from.
+     * Вхід та виходи кроків — буфери плану, шари не зберігають стан для backpropagation.
      */
-    private double[] getErrors(double[] networkOutput, int correctAnswer) {
-        int numClasses = networkOutput.length;
-        double[] expected = new double[numClasses];
-        expected[correctAnswer] = 1;  // One-hot encoding
-
-        double[] errors = new double[numClasses];
-        for (int i = 0; i < numClasses; i++) {
-            errors[i] = networkOutput[i] - expected[i];  // output - target
-        }
-        return errors;
-    }
-
-
-    private double computeCrossEntropyLoss(double[] output, int correctLabel) {
-        double eps = 1e-7;
-        return -Math.log(Math.max(output[correctLabel], eps));
-    }
-
-
-    private int getMaxIndex(double[] in) {
-        double max = 0;
-        int index = 0;
-
-        for (int i = 0; i < in.length; i++) {
-            if (in[i] >= max) {
-                max = in[i];
-                index = i;
-            }
-        }
-
-        return index;
+    private Tensor infer(List<Image> images, int from, int size) {
+        ExecutionPlan plan = plans.getFirst();
+        Tensor input = plan.input(size);
+        input.loadImages(images, from);
+        return plan.infer(input);
     }
 
     /**
@@ -118,17 +63,9 @@ public class NeuralNetwork {
      * Використовує batch size = 1 для inference
      */
     public int guess(Image image) {
-        List<List<double[][]>> batchInputs = new ArrayList<>();
-        List<double[][]> imgList = new ArrayList<>();
-        imgList.add(image.data());
-        batchInputs.add(imgList);
-
         // Forward через весь батч (розмір 1)
-        List<double[]> batchOutputs = layers.getFirst().getOutputBatch(batchInputs);
-
-        double[] output = batchOutputs.getFirst();
-        double[] softmaxOut = applySoftmax(output);
-        return getMaxIndex(softmaxOut);
+        Tensor output = infer(List.of(image), 0, 1);
+        return LossHead.argmax(output.getData(), 0, output.getSampleStride());
     }
 
     /**
@@ -137,18 +74,11 @@ public class NeuralNetwork {
     public List<Integer> guessBatch(List<Image> images) {
         List<Integer> predictions = new ArrayList<>();
 
-        List<List<double[][]>> batchInputs = new ArrayList<>();
-        for (Image img : images) {
-            List<double[][]> imgList = new ArrayList<>();
-            imgList.add(img.data());
-            batchInputs.add(imgList);
-        }
-
-        List<double[]> batchOutputs = layers.getFirst().getOutputBatch(batchInputs);
+        Tensor output = infer(images, 0, images.size());
+        int classes = output.getSampleStride();
 
-        for (double[] output : batchOutputs) {
-            double[] softmaxOut = applySoftmax(output);
-            predictions.add(getMaxIndex(softmaxOut));
+        for (int i = 0; i < output.getBatchSize(); i++) {
+            predictions.add(LossHead.argmax(output.getData(), i * classes, classes));
         }
 
         return predictions;
@@ -158,21 +88,11 @@ public class NeuralNetwork {
      * Real-time prediction для одного вектора (784 елементів для MNIST)
      */
     public double[] guessInRealTime(double[] inputs) {
-        double[][] inputMatrix = new double[28][28];
-
-        for (int i = 0; i < 28; i++) {
-            System.arraycopy(inputs, i * 28, inputMatrix[i], 0, 28);
-        }
+        Tensor input = Tensor.fromVector(inputs, 1, INPUT_ROWS, INPUT_COLS);
 
-        List<List<double[][]>> batchInputs = new ArrayList<>();
-        List<double[][]> imgList = new ArrayList<>();
-        imgList.add(inputMatrix);
-        batchInputs.add(imgList);
+        Tensor output = plans.getFirst().infer(input);
 
-        List<double[]> batchOutputs = layers.getFirst().getOutputBatch(batchInputs);
-
-        double[] output = batchOutputs.getFirst();
-        return applySoftmax(output);  // Повертаємо ймовірності
+        return LossHead.softmax(output.getData(), 0, output.getSampleStride());  // Повертаємо ймовірності
     }
 
 
@@ -220,26 +140,23 @@ public class NeuralNetwork {
         for (int b = 0; b < numBatches; b++) {
             int start = b * batchSize;
             int end = Math.min(start + batchSize, images.size());
-            List<Image> batch = images.subList(start, end);
-
-            List<Integer> predictions = guessBatch(batch);
 
-            for (int i = 0; i < predictions.size(); i++) {
-                if (predictions.get(i) == batch.get(i).label()) {
-                    correct++;
-                }
-            }
+            Tensor output = infer(images, start, end - start);
+            correct += LossHead.countCorrect(output, images, start);
         }
 
         return ((float) correct / images.size());
     }
 
     /**
-     * Навчання на одній епосі з mini-batch розбиттям
+     * Навчання на одній епосі з mini-batch розбиттям.
+     * Вхід, градієнти та проміжні буфери беруться з плану виконання та workspace шарів,
+     * тому після першого батча крок навчання не виділяє пам'ять (див. {@link Workspace}).
+     * Якщо задано кілька потоків (див. setTrainingThreads), кожен батч ділиться між копіями шарів.
      *
      * @param images    тренувальний набір
      * @param batchSize розмір батча
-     * @return
+     * @return сумарний loss за епоху
      */
     public double trainEpoch(List<Image> images, int batchSize) {
         int numBatches = (images.size() + batchSize - 1) / batchSize;
@@ -248,42 +165,105 @@ public class NeuralNetwork {
         for (int b = 0; b < numBatches; b++) {
             int start = b * batchSize;
             int end = Math.min(start + batchSize, images.size());
-            List<Image> batch = images.subList(start, end);
+            int size = end - start;
 
-            List<List<double[][]>> batchInputs = new ArrayList<>();
-            List<Integer> labels = new ArrayList<>();
-
-            for (Image img : batch) {
-                List<double[][]> imgList = new ArrayList<>();
-                imgList.add(img.data());
-                batchInputs.add(imgList);
-                labels.add(img.label());
+            if (plans.size() == 1 || size == 1) {
+                totalLoss += trainShard(plans.getFirst(), images, start, size);
+                for (int l = 0; l < layers.size(); l++) {
+                    Layer layer = layers.get(l);
+                    layer.updateParameters(size, 0, layer.getParameterCount());
+                }
+            } else {
+                totalLoss += trainBatchParallel(images, start, size);
             }
+        }
+        return totalLoss;
+    }
 
-            // Forward через всю мережу
-            List<double[]> batchOutputs = layers.getFirst().getOutputBatch(batchInputs);
-
-            List<double[]> batchErrors = new ArrayList<>();
-            double batchLoss = 0.0;
+    /**
+     * Forward та backpropagation для size прикладів, починаючи з start, за планом plan.
+     * Градієнти параметрів залишаються в шарах плану, параметри не змінюються.
+     *
+     * @return сумарний loss прикладів
+     */
+    private double trainShard(ExecutionPlan plan, List<Image> images, int start, int size) {
+        // Forward через всю мережу
+        Tensor batchInput = plan.input(size);
+        batchInput.loadImages(images, start);
+        Tensor batchOutputs = plan.forward(batchInput);
+
+        // Loss та градієнт Softmax + CrossEntropy (output - target) для всього батча
+        Tensor batchErrors = plan.outputGradient(size);
+        double batchLoss = LossHead.crossEntropy(batchOutputs, images, start, batchErrors);
+
+        plan.backward(batchErrors);
+        return batchLoss;
+    }
 
-            for (int i = 0; i < batch.size(); i++) {
-                double[] output = batchOutputs.get(i);
-                double[] softmaxOut = applySoftmax(output);
+    /**
+     * Data parallelism всередині батча:
+     * <ol>
+     *   <li>батч ділиться на неперервні частини, кожна проходить forward/backward у власній копії шарів
+     *       (параметри спільні, градієнти — свої для кожної копії);</li>
+     *   <li>градієнти копій сумуються деревом: на кроці s копія i додає градієнти копії i + s,
+     *       тож після ⌈log₂ T⌉ кроків повна сума опиняється в шарах мережі;</li>
+     *   <li>параметри оновлюються паралельно неперетинними діапазонами.</li>
+     * </ol>
+     * Завдання виконуються в спільному ForkJoinPool.
+     *
+     * @return сумарний loss батча
+     */
+    private double trainBatchParallel(List<Image> images, int start, int size) {
+        int shards = Math.min(plans.size(), size);
+
+        double loss = IntStream.range(0, shards).parallel()
+            .mapToDouble(t -> {
+                int from = start + (int) ((long) size * t / shards);
+                int to = start + (int) ((long) size * (t + 1) / shards);
+                return trainShard(plans.get(t), images, from, to - from);
+            })
+            .sum();
+
+        for (int stride = 1; stride < shards; stride *= 2) {
+            int step = stride;
+            IntStream.range(0, (shards + 2 * step - 1) / (2 * step)).parallel()
+                .map(pair -> pair * 2 * step)
+                .filter(t -> t + step < shards)
+                .forEach(t -> {
+                    List<Layer> target = plans.get(t).getLayers();
+                    List<Layer> source = plans.get(t + step).getLayers();
+                    for (int l = 0; l < target.size(); l++) {
+                        target.get(l).addGradients(source.get(l));
+                    }
+                });
+        }
 
-                // Обчислюємо loss для цього прикладу
-                double loss = computeCrossEntropyLoss(softmaxOut, labels.get(i));
-                batchLoss += loss;
+        for (Layer layer : layers) {
+            int count = layer.getParameterCount();
+            IntStream.range(0, (count + UPDATE_CHUNK - 1) / UPDATE_CHUNK).parallel()
+                .forEach(chunk -> layer.updateParameters(size,
+                    chunk * UPDATE_CHUNK, Math.min(count, (chunk + 1) * UPDATE_CHUNK)));
+        }
+        return loss;
+    }
 
-                // Обчислюємо градієнт (Softmax + CrossEntropy)
-                double[] errors = getErrors(softmaxOut, labels.get(i));
-                batchErrors.add(errors);
+    /**
+     * Вмикає data parallelism всередині батча: кожен батч ділиться на threads частин,
+     * які обчислюються паралельно у копіях шарів зі спільними параметрами.
+     * За замовчуванням 1 — навчання в одному потоці.
+     */
+    public void setTrainingThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Training threads must be positive, got " + threads);
+        }
+        plans.subList(1, plans.size()).clear();
+        for (int t = 1; t < threads; t++) {
+            List<Layer> replica = new ArrayList<>();
+            for (Layer layer : layers) {
+                replica.add(layer.replicate());
             }
-
-            totalLoss += batchLoss;
-
-            layers.getLast().backPropagationBatch(batchErrors);
+            plans.add(ExecutionPlan.compile(replica));
         }
-        return totalLoss;
     }
 
 
@@ -302,7 +282,7 @@ public class NeuralNetwork {
             totalParams += layer.getParameterCount();
 
             String color;
-            if (layer instanceof ConvolutionLayer) {
+            if (layer instanceof ConvolutionLayer || layer instanceof ConvolutionPoolLayer) {
                 color = GREEN;
             } else if (layer instanceof MaxPoolLayer) {
                 color = BLUE;
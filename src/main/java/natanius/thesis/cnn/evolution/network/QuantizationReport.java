@@ -0,0 +1,48 @@
+package natanius.thesis.cnn.evolution.network;
+
+/**
+ * Результат порівняння int8 мережі з вихідною (див. {@link QuantizedNetwork#compare}).
+ *
+ * @param samples           кількість зображень
+ * @param referenceAccuracy точність вихідної мережі
+ * @param quantizedAccuracy точність int8 мережі
+ * @param agreement         частка зображень з однаковим передбаченням
+ * @param referenceNanos    сумарний час inference вихідної мережі
+ * @param quantizedNanos    сумарний час inference int8 мережі
+ * @param backend           backend ядер, на якому виконувались обидві мережі
+ */
+public record QuantizationReport(int samples, float referenceAccuracy, float quantizedAccuracy, float agreement,
+                                 long referenceNanos, long quantizedNanos, String backend) {
+
+    /**
+     * Зміна точності після квантизації (від'ємна — втрата)
+     */
+    public float accuracyDelta() {
+        return quantizedAccuracy - referenceAccuracy;
+    }
+
+    /**
+     * Прискорення inference (менше 1 — int8 мережа повільніша)
+     */
+    public double speedup() {
+        return (double) referenceNanos / quantizedNanos;
+    }
+
+    /**
+     * Скалярна Java не має int8 dot-інструкцій, а цілочисельне множення не швидше за double FMA,
+     * тому без векторного backend int8 мережа зазвичай повільніша за вихідну (згортки 3×3 у якій
+     * ще й рахуються через Winograd). Тоді звіт явно про це попереджає.
+     */
+    @Override
+    public String toString() {
+        String report = String.format("INT8 quantization on %d images: accuracy %.4f → %.4f (Δ %+.4f), "
+                + "predictions agree %.2f%%, inference %.1f ms → %.1f ms (×%.2f, %s kernels)",
+            samples, referenceAccuracy, quantizedAccuracy, accuracyDelta(),
+            agreement * 100, referenceNanos / 1e6, quantizedNanos / 1e6, speedup(), backend);
+        if (speedup() < 1) {
+            report += "; int8 inference is slower than double on this backend, "
+                + "the speedup needs the vector kernels (--add-modules jdk.incubator.vector)";
+        }
+        return report;
+    }
+}
@@ -0,0 +1,217 @@
+package natanius.thesis.cnn.evolution.network;
+
+import static natanius.thesis.cnn.evolution.data.Constants.INPUT_COLS;
+import static natanius.thesis.cnn.evolution.data.Constants.INPUT_ROWS;
+import static natanius.thesis.cnn.evolution.kernels.Kernels.BACKEND;
+import static natanius.thesis.cnn.evolution.quantization.QuantizedLayer.scaleFor;
+
+import java.util.ArrayList;
+import java.util.List;
+import natanius.thesis.cnn.evolution.data.Image;
+import natanius.thesis.cnn.evolution.data.Workspace;
+import natanius.thesis.cnn.evolution.layers.Layer;
+import natanius.thesis.cnn.evolution.quantization.QuantizedLayer;
+
+/**
+ * int8 inference для навченої мережі (post-training quantization, див. {@link QuantizedLayer}).
+ *
+ * <p>Ваги квантизуються поканально під час створення; кроки квантизації активацій визначає калібрування
+ * на частині тренувального набору. Згортки та повнозв'язні шари множать int8 × int8 з накопиченням в int32,
+ * між шарами передаються лише int8 тензори. Параметри копіюються, тому подальше навчання вихідної
+ * мережі не змінює квантизовану.
+ */
+public class QuantizedNetwork {
+
+    private final List<QuantizedLayer> layers;
+    // Слот i: int8 вхід шару i (byteBuffer) та його активації до квантизації (buffer);
+    // слот layers.size() — нормалізовані пікселі одного зображення перед квантизацією
+    private final Workspace workspace;
+
+    private static final int CALIBRATION_BATCH = 64;
+
+    private QuantizedNetwork(List<QuantizedLayer> layers) {
+        this.layers = layers;
+        this.workspace = new Workspace(layers.size() + 1);
+    }
+
+    /**
+     * Квантизує мережу та калібрує кроки активацій на наборі calibration.
+     */
+    public static QuantizedNetwork quantize(NeuralNetwork network, List<Image> calibration) {
+        if (calibration.isEmpty()) {
+            throw new IllegalArgumentException("Calibration set must not be empty");
+        }
+
+        List<QuantizedLayer> layers = new ArrayList<>();
+        for (Layer layer : network.getLayers()) {
+            layers.add(layer.quantize());
+        }
+        QuantizedNetwork quantized = new QuantizedNetwork(layers);
+        quantized.calibrate(calibration);
+        return quantized;
+    }
+
+    /**
+     * Кроки входів визначаються шар за шаром: s = max|a| / 127 по всіх калібрувальних прикладах.
+     * Активації шару i обчислюються вже з квантизованих виходів шарів 0..i-1, тому крок
+     * враховує похибку попередніх шарів. Кожен шар проходиться двічі: спершу для максимуму,
+     * потім для квантизації його виходу новим кроком.
+     */
+    private void calibrate(List<Image> images) {
+        int count = images.size();
+        double maxAbs = 0.0;
+        double[] pixels = new double[INPUT_ROWS * INPUT_COLS];
+        for (Image image : images) {
+            image.copyTo(pixels, 0);
+            for (double pixel : pixels) {
+                maxAbs = Math.max(maxAbs, Math.abs(pixel));
+            }
+        }
+        layers.getFirst().setInputScale(scaleFor(maxAbs));
+        byte[] current = new byte[count * INPUT_ROWS * INPUT_COLS];
+        quantizeImages(images, 0, count, current);
+
+        for (int l = 0; l < layers.size() - 1; l++) {
+            int outputs = layers.get(l).getOutputElements();
+            double layerMax = 0.0;
+            for (int from = 0; from < count; from += CALIBRATION_BATCH) {
+                int size = Math.min(CALIBRATION_BATCH, count - from);
+                double[] output = forwardSlice(l, current, from, size);
+                for (int i = 0; i < size * outputs; i++) {
+                    layerMax = Math.max(layerMax, Math.abs(output[i]));
+                }
+            }
+
+            QuantizedLayer next = layers.get(l + 1);
+            next.setInputScale(scaleFor(layerMax));
+            double inverse = 1.0 / next.getInputScale();
+            byte[] quantized = new byte[count * outputs];
+            for (int from = 0; from < count; from += CALIBRATION_BATCH) {
+                int size = Math.min(CALIBRATION_BATCH, count - from);
+                double[] output = forwardSlice(l, current, from, size);
+                for (int i = 0; i < size * outputs; i++) {
+                    quantized[from * outputs + i] = QuantizedLayer.quantize(output[i], inverse);
+                }
+            }
+            current = quantized;
+        }
+    }
+
+    /**
+     * Forward pass шару l для прикладів [from, from + size) з int8 входів усього калібрувального набору
+     */
+    private double[] forwardSlice(int l, byte[] inputs, int from, int size) {
+        QuantizedLayer layer = layers.get(l);
+        int elements = layer.getInputElements();
+        byte[] input = workspace.byteBuffer(l, size * elements);
+        System.arraycopy(inputs, from * elements, input, 0, size * elements);
+        double[] output = workspace.buffer(l, size * layer.getOutputElements());
+        layer.forward(input, size, output);
+        return output;
+    }
+
+    private void quantizeImages(List<Image> images, int from, int size, byte[] input) {
+        double inverse = 1.0 / layers.getFirst().getInputScale();
+        double[] pixels = workspace.buffer(layers.size(), INPUT_ROWS * INPUT_COLS);
+        int i = 0;
+        for (int n = 0; n < size; n++) {
+            images.get(from + n).copyTo(pixels, 0);
+            for (double pixel : pixels) {
+                input[i++] = QuantizedLayer.quantize(pixel, inverse);
+            }
+        }
+    }
+
+    /**
+     * Logits [size][classes] для size зображень, починаючи з from (буфер workspace, перезаписується наступним викликом)
+     */
+    private double[] infer(List<Image> images, int from, int size) {
+        byte[] input = workspace.byteBuffer(0, size * INPUT_ROWS * INPUT_COLS);
+        quantizeImages(images, from, size, input);
+
+        double[] output = null;
+        for (int l = 0; l < layers.size(); l++) {
+            QuantizedLayer layer = layers.get(l);
+            int outputs = size * layer.getOutputElements();
+            output = workspace.buffer(l, outputs);
+            layer.forward(input, size, output);
+
+            if (l + 1 < layers.size()) {
+                QuantizedLayer next = layers.get(l + 1);
+                double inverse = 1.0 / next.getInputScale();
+                input = workspace.byteBuffer(l + 1, outputs);
+                for (int i = 0; i < outputs; i++) {
+                    input[i] = QuantizedLayer.quantize(output[i], inverse);
+                }
+            }
+        }
+        return output;
+    }
+
+    /**
+     * Передбачення для батчу зображень (як {@link NeuralNetwork#guessBatch})
+     */
+    public List<Integer> guessBatch(List<Image> images) {
+        List<Integer> predictions = new ArrayList<>();
+
+        double[] logits = infer(images, 0, images.size());
+        int classes = layers.getLast().getOutputElements();
+        for (int i = 0; i < images.size(); i++) {
+            predictions.add(LossHead.argmax(logits, i * classes, classes));
+        }
+        return predictions;
+    }
+
+    /**
+     * Точність на батчах (як {@link NeuralNetwork#testBatch})
+     */
+    public float testBatch(List<Image> images, int batchSize) {
+        int correct = 0;
+        int classes = layers.getLast().getOutputElements();
+
+        for (int start = 0; start < images.size(); start += batchSize) {
+            int size = Math.min(batchSize, images.size() - start);
+            double[] logits = infer(images, start, size);
+            for (int i = 0; i < size; i++) {
+                if (LossHead.argmax(logits, i * classes, classes) == images.get(start + i).label()) {
+                    correct++;
+                }
+            }
+        }
+        return ((float) correct / images.size());
+    }
+
+    /**
+     * Порівнює точність, збіг передбачень та час inference з вихідною мережею на однакових батчах.
+     */
+    public QuantizationReport compare(NeuralNetwork reference, List<Image> images, int batchSize) {
+        int referenceCorrect = 0;
+        int quantizedCorrect = 0;
+        int agreements = 0;
+        long referenceNanos = 0;
+        long quantizedNanos = 0;
+
+        for (int start = 0; start < images.size(); start += batchSize) {
+            List<Image> batch = images.subList(start, Math.min(start + batchSize, images.size()));
+
+            long time = System.nanoTime();
+            List<Integer> expected = reference.guessBatch(batch);
+            referenceNanos += System.nanoTime() - time;
+
+            time = System.nanoTime();
+            List<Integer> actual = guessBatch(batch);
+            quantizedNanos += System.nanoTime() - time;
+
+            for (int i = 0; i < batch.size(); i++) {
+                int label = batch.get(i).label();
+                referenceCorrect += expected.get(i) == label ? 1 : 0;
+                quantizedCorrect += actual.get(i) == label ? 1 : 0;
+                agreements += expected.get(i).equals(actual.get(i)) ? 1 : 0;
+            }
+        }
+
+        float size = images.size();
+        return new QuantizationReport(images.size(), referenceCorrect / size, quantizedCorrect / size,
+            agreements / size, referenceNanos, quantizedNanos, BACKEND.getName());
+    }
+}
@@ -0,0 +1,139 @@
+package natanius.thesis.cnn.evolution.quantization;
+
+import static natanius.thesis.cnn.evolution.kernels.Kernels.BACKEND;
+
+import natanius.thesis.cnn.evolution.activation.Activation;
+import natanius.thesis.cnn.evolution.data.Workspace;
+import natanius.thesis.cnn.evolution.kernels.Im2col;
+import natanius.thesis.cnn.evolution.kernels.Int8Gemm;
+import natanius.thesis.cnn.evolution.kernels.Parallel;
+
+/**
+ * Квантизована згортка (im2col + {@link Int8Gemm}), за потреби злита з max pooling.
+ *
+ * <p>Кроки фільтрів додатні, тому max pooling виконується прямо над цілими сумами:
+ * max (s × acc + b) = s × max acc + b, а активація (монотонна) застосовується вже до виходу pooling.
+ * Без pooling вікно дорівнює 1×1.
+ */
+public class QuantizedConvolution extends QuantizedLayer {
+
+    private final int filterSize;
+    private final int stepSize;
+    private final int padding;
+    private final int inLength;
+    private final int inRows;
+    private final int inCols;
+    private final int numFilters;
+    private final int convRows;
+    private final int convCols;
+    private final int poolWindow;
+    private final int poolStep;
+    private final int outRows;
+    private final int outCols;
+    private final int patchSize;
+    /**
+     * Квантизовані фільтри [numFilters][inLength × filterSize²] та крок кожного фільтра
+     */
+    private final byte[] filters;
+    private final double[] filterScales;
+    private final double[] biases;
+    private final Activation activation;
+
+    // Слоти буферів, що повторно використовуються між батчами
+    private static final int COLUMNS = 0;
+    private static final int PRODUCT = 1;
+    private final Workspace workspace = new Workspace(2);
+
+    // Кратність зрізів фільтрів для паралельної обробки
+    private static final int FILTER_SLICE = 8;
+
+    public QuantizedConvolution(double[] filters, double[] biases, Activation activation,
+                                int filterSize, int stepSize, int padding,
+                                int inLength, int inRows, int inCols, int poolWindow, int poolStep) {
+        this.filterSize = filterSize;
+        this.stepSize = stepSize;
+        this.padding = padding;
+        this.inLength = inLength;
+        this.inRows = inRows;
+        this.inCols = inCols;
+        this.numFilters = biases.length;
+        this.convRows = (inRows - filterSize + 2 * padding) / stepSize + 1;
+        this.convCols = (inCols - filterSize + 2 * padding) / stepSize + 1;
+        this.poolWindow = poolWindow;
+        this.poolStep = poolStep;
+        this.outRows = (convRows - poolWindow) / poolStep + 1;
+        this.outCols = (convCols - poolWindow) / poolStep + 1;
+        this.patchSize = inLength * filterSize * filterSize;
+        this.filterScales = new double[numFilters];
+        this.filters = quantizeWeights(filters, numFilters, patchSize, 1, patchSize, filterScales);
+        this.biases = biases.clone();
+        this.activation = activation;
+    }
+
+    @Override
+    public void forward(byte[] input, int batchSize, double[] output) {
+        int width = batchSize * convRows * convCols;
+        byte[] columns = workspace.byteBuffer(COLUMNS, patchSize * width);
+        Im2col.im2col(input, batchSize, inLength, inRows, inCols,
+            filterSize, stepSize, padding, convRows, convCols, columns);
+        int[] product = workspace.intBuffer(PRODUCT, numFilters * width);
+
+        Parallel.forEachSlice(numFilters, FILTER_SLICE, (long) numFilters * patchSize * width, (from, to) -> {
+            Int8Gemm.multiply(to - from, width, patchSize,
+                filters, from * patchSize, patchSize,
+                columns, 0, width,
+                product, from * width, width);
+            dequantizeSlice(from, to, product, batchSize, output);
+        });
+    }
+
+    /**
+     * a = f(s_x × s_w[f] × max acc + b[f]) для фільтрів [from, to) у вихід [batchSize][numFilters][outRows][outCols]
+     */
+    private void dequantizeSlice(int from, int to, int[] product, int batchSize, double[] output) {
+        int pixels = convRows * convCols;
+        int width = batchSize * pixels;
+        int outPixels = outRows * outCols;
+
+        for (int n = 0; n < batchSize; n++) {
+            for (int f = from; f < to; f++) {
+                double scale = inputScale * filterScales[f];
+                double bias = biases[f];
+                int mapBase = f * width + n * pixels;
+                int outIndex = (n * numFilters + f) * outPixels;
+
+                if (poolWindow == 1 && poolStep == 1) {
+                    for (int p = 0; p < pixels; p++) {
+                        output[outIndex + p] = product[mapBase + p] * scale + bias;
+                    }
+                    continue;
+                }
+
+                for (int r = 0; r < outRows; r++) {
+                    for (int c = 0; c < outCols; c++, outIndex++) {
+                        int windowBase = mapBase + r * poolStep * convCols + c * poolStep;
+                        int max = Integer.MIN_VALUE;
+                        for (int x = 0; x < poolWindow; x++) {
+                            for (int i = windowBase + x * convCols; i < windowBase + x * convCols + poolWindow; i++) {
+                                max = Math.max(max, product[i]);
+                            }
+                        }
+                        output[outIndex] = max * scale + bias;
+                    }
+                }
+            }
+            int sliceBase = (n * numFilters + from) * outPixels;
+            BACKEND.activate(activation, output, output, sliceBase, (to - from) * outPixels);
+        }
+    }
+
+    @Override
+    public int getInputElements() {
+        return inLength * inRows * inCols;
+    }
+
+    @Override
+    public int getOutputElements() {
+        return numFilters * outRows * outCols;
+    }
+}
@@ -0,0 +1,62 @@
+package natanius.thesis.cnn.evolution.quantization;
+
+import static natanius.thesis.cnn.evolution.kernels.Kernels.BACKEND;
+
+import natanius.thesis.cnn.evolution.activation.Activation;
+import natanius.thesis.cnn.evolution.data.Workspace;
+import natanius.thesis.cnn.evolution.kernels.Int8Gemm;
+
+/**
+ * Квантизований повнозв'язний шар: Z[batchSize][outLength] = X · W в int32, крок ваг — окремий для кожного виходу.
+ */
+public class QuantizedFullyConnected extends QuantizedLayer {
+
+    private final int inLength;
+    private final int outLength;
+    /**
+     * Квантизовані ваги [inLength][outLength] та крок кожного стовпця (виходу)
+     */
+    private final byte[] weights;
+    private final double[] weightScales;
+    private final double[] biases;
+    private final Activation activation;
+
+    private static final int PRODUCT = 0;
+    private final Workspace workspace = new Workspace(1);
+
+    public QuantizedFullyConnected(double[] weights, double[] biases, Activation activation, int inLength) {
+        this.inLength = inLength;
+        this.outLength = biases.length;
+        this.weightScales = new double[outLength];
+        this.weights = quantizeWeights(weights, outLength, 1, outLength, inLength, weightScales);
+        this.biases = biases.clone();
+        this.activation = activation;
+    }
+
+    @Override
+    public void forward(byte[] input, int batchSize, double[] output) {
+        int[] product = workspace.intBuffer(PRODUCT, batchSize * outLength);
+        Int8Gemm.multiply(batchSize, outLength, inLength,
+            input, 0, inLength,
+            weights, 0, outLength,
+            product, 0, outLength);
+
+        for (int b = 0; b < batchSize; b++) {
+            for (int o = 0; o < outLength; o++) {
+                int index = b * outLength + o;
+                output[index] = product[index] * inputScale * weightScales[o] + biases[o];
+            }
+        }
+        BACKEND.activate(activation, output, output, 0, batchSize * outLength);
+    }
+
+    @Override
+    public int getInputElements() {
+        return inLength;
+    }
+
+    @Override
+    public int getOutputElements() {
+        return outLength;
+    }
+}
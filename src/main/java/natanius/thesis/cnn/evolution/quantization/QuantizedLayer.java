@@ -0,0 +1,80 @@
+package natanius.thesis.cnn.evolution.quantization;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Шар int8 inference, отриманий з навченого шару (див. Layer.quantize).
+ *
+ * <p><b>Схема квантизації</b> (симетрична, без zero point):
+ * <pre>
+ *   x ≈ s_x × q_x,  q_x ∈ [-127, 127]        вхід: один крок s_x на тензор (з калібрування)
+ *   w ≈ s_w[c] × q_w,  s_w[c] = max|w_c| / 127  ваги: окремий крок для кожного вихідного каналу c
+ *   z[c] = s_x × s_w[c] × Σ q_x q_w + b[c]      добутки та суми — цілі (int8 × int8 → int32)
+ * </pre>
+ * Biases, масштабування та активація обчислюються в double; вихід шару квантизується кроком
+ * входу наступного шару.
+ */
+public abstract class QuantizedLayer {
+
+    protected static final int QMAX = 127;
+
+    /**
+     * Крок квантизації входу s_x (задається калібруванням)
+     */
+    @Getter
+    @Setter
+    protected double inputScale = 1.0;
+
+    /**
+     * Forward pass для батча квантизованих входів.
+     *
+     * @param input     int8 входи [batchSize][getInputElements()]
+     * @param batchSize кількість прикладів
+     * @param output    буфер для активацій шару [batchSize][getOutputElements()] (до квантизації)
+     */
+    public abstract void forward(byte[] input, int batchSize, double[] output);
+
+    public abstract int getInputElements();
+
+    public abstract int getOutputElements();
+
+    /**
+     * Крок квантизації для значень з максимальним модулем maxAbs (1, якщо всі значення нульові)
+     */
+    public static double scaleFor(double maxAbs) {
+        return maxAbs > 0 ? maxAbs / QMAX : 1.0;
+    }
+
+    /**
+     * q = round(value / scale), обмежене [-127, 127]
+     */
+    public static byte quantize(double value, double inverseScale) {
+        long q = Math.round(value * inverseScale);
+        return (byte) (q > QMAX ? QMAX : q < -QMAX ? -QMAX : q);
+    }
+
+    /**
+     * Поканальна квантизація ваг: вага з номером e каналу c лежить у weights[c × channelStride + e × elementStride].
+     *
+     * @param scales буфер для кроків каналів (channels елементів)
+     * @return квантизовані ваги в тій самій розкладці
+     */
+    protected static byte[] quantizeWeights(double[] weights, int channels, int channelStride, int elementStride,
+                                            int length, double[] scales) {
+        byte[] quantized = new byte[weights.length];
+        for (int c = 0; c < channels; c++) {
+            double maxAbs = 0.0;
+            for (int e = 0; e < length; e++) {
+                maxAbs = Math.max(maxAbs, Math.abs(weights[c * channelStride + e * elementStride]));
+            }
+            scales[c] = scaleFor(maxAbs);
+            double inverse = 1.0 / scales[c];
+            for (int e = 0; e < length; e++) {
+                int index = c * channelStride + e * elementStride;
+                quantized[index] = quantize(weights[index], inverse);
+            }
+        }
+        return quantized;
+    }
+}
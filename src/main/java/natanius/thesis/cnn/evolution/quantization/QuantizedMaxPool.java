@@ -0,0 +1,56 @@
+package natanius.thesis.cnn.evolution.quantization;
+
+/**
+ * Max pooling над int8 входом: квантизація монотонна, тому максимум квантизованих значень —
+ * це квантизований максимум, і вихід точно дорівнює s_x × max q.
+ */
+public class QuantizedMaxPool extends QuantizedLayer {
+
+    private final int stepSize;
+    private final int windowSize;
+    private final int inLength;
+    private final int inRows;
+    private final int inCols;
+    private final int outRows;
+    private final int outCols;
+
+    public QuantizedMaxPool(int stepSize, int windowSize, int inLength, int inRows, int inCols) {
+        this.stepSize = stepSize;
+        this.windowSize = windowSize;
+        this.inLength = inLength;
+        this.inRows = inRows;
+        this.inCols = inCols;
+        this.outRows = (inRows - windowSize) / stepSize + 1;
+        this.outCols = (inCols - windowSize) / stepSize + 1;
+    }
+
+    @Override
+    public void forward(byte[] input, int batchSize, double[] output) {
+        int outIndex = 0;
+        for (int map = 0; map < batchSize * inLength; map++) {
+            int mapBase = map * inRows * inCols;
+            for (int r = 0; r < outRows; r++) {
+                for (int c = 0; c < outCols; c++, outIndex++) {
+                    int windowBase = mapBase + r * stepSize * inCols + c * stepSize;
+                    int max = Byte.MIN_VALUE;
+                    for (int x = 0; x < windowSize; x++) {
+                        for (int i = windowBase + x * inCols; i < windowBase + x * inCols + windowSize; i++) {
+                            max = Math.max(max, input[i]);
+                        }
+                    }
+                    output[outIndex] = max * inputScale;
+                }
+            }
+        }
+    }
+
+    @Override
+    public int getInputElements() {
+        return inLength * inRows * inCols;
+    }
+
+    @Override
+    public int getOutputElements() {
+        return inLength * outRows * outCols;
+    }
+}